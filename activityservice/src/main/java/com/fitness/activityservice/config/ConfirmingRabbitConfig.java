@@ -0,0 +1,51 @@
+package com.fitness.activityservice.config;
+
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.amqp.RabbitTemplateConfigurer;
+import org.springframework.boot.autoconfigure.amqp.RabbitTemplateCustomizer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Publisher confirms and returns for the outbox relay and the async publisher only. They publish
+ * through {@code confirmingRabbitTemplate}, which uses the connection factory's separate publisher
+ * connection with correlated confirms, publisher returns and mandatory publishing. The default
+ * template keeps plain channels, as in inline mode, where confirms would go unread.
+ * <p>
+ * Declaring a second template makes Boot's own back off, so the default one is declared here as
+ * well, configured the same way Boot would.
+ */
+@Configuration
+@ConditionalOnExpression("'${activity.events.mode:inline}' != 'inline'")
+public class ConfirmingRabbitConfig {
+
+    @Bean
+    @Primary
+    public RabbitTemplate rabbitTemplate(RabbitTemplateConfigurer configurer,
+                                         ConnectionFactory connectionFactory,
+                                         ObjectProvider<RabbitTemplateCustomizer> customizers){
+        RabbitTemplate template = new RabbitTemplate();
+        configurer.configure(template, connectionFactory);
+        customizers.orderedStream().forEach(customizer -> customizer.customize(template));
+        return template;
+    }
+
+    @Bean
+    public RabbitTemplate confirmingRabbitTemplate(RabbitTemplateConfigurer configurer,
+                                                   ConnectionFactory connectionFactory){
+        CachingConnectionFactory publisherConnectionFactory = (CachingConnectionFactory) connectionFactory.getPublisherConnectionFactory();
+        publisherConnectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        publisherConnectionFactory.setPublisherReturns(true);
+
+        RabbitTemplate template = new RabbitTemplate();
+        configurer.configure(template, connectionFactory);
+        template.setUsePublisherConnection(true);
+        template.setMandatory(true);
+        return template;
+    }
+}
@@ -1,12 +1,17 @@
 package com.fitness.activityservice.controller;
 
+import com.fitness.activityservice.dto.ActivityPage;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.model.ActivityType;
 import com.fitness.activityservice.service.ActivityService;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -24,11 +29,28 @@ public class ActivityController {
         return ResponseEntity.ok(activityService.trackActivity(request));
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<BatchActivityResponse> trackActivities(@RequestBody List<ActivityRequest> requests,@RequestHeader("X-User-ID") String userId){
+        return ResponseEntity.ok(activityService.trackActivities(userId, requests));
+    }
+
     @GetMapping
     public ResponseEntity<List<ActivityResponse>> getUserActivities(@RequestHeader("X-User-ID") String userId){
         return ResponseEntity.ok(activityService.getUserActivities(userId));
     }
 
+    @GetMapping("/page")
+    public ResponseEntity<ActivityPage> getUserActivityPage(
+            @RequestHeader("X-User-ID") String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) ActivityType type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean includeMetrics) {
+        return ResponseEntity.ok(activityService.getUserActivityPage(userId, cursor, size, type, from, to, includeMetrics));
+    }
+
     @GetMapping("/{activityId}")
     public ResponseEntity<ActivityResponse> getUserActivityById(@PathVariable String activityId){
         return ResponseEntity.ok(activityService.getActivityById(activityId));
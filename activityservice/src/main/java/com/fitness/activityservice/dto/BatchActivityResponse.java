@@ -0,0 +1,19 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch upload, with one result per submitted activity in request order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchActivityResponse {
+    private int created;
+    private int failed;
+    private List<BatchActivityResult> results;
+}
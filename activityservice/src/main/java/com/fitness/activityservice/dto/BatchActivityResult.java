@@ -0,0 +1,24 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchActivityResult {
+
+    public enum Status {
+        CREATED,
+        REJECTED,
+        FAILED
+    }
+
+    private int index;
+    private Status status;
+    private ActivityResponse activity;
+    // true once the event is handed to RabbitMQ, or durably queued when the outbox is used
+    private boolean published;
+    private String error;
+}
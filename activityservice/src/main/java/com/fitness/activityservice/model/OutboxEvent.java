@@ -0,0 +1,45 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Activity event waiting to be relayed to RabbitMQ. Written in the same transaction as the
+ * activity itself; sent entries expire a week after delivery.
+ */
+@Document(collection = "activity_outbox")
+@CompoundIndex(name = "status_next_attempt", def = "{'status': 1, 'nextAttemptAt': 1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+
+    public enum Status {
+        PENDING,
+        SENT
+    }
+
+    @Id
+    private String id;
+    private String activityId;
+    private String exchange;
+    private String routingKey;
+    private Activity payload;
+    private Status status;
+    private int attempts;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime nextAttemptAt;
+
+    @Indexed(expireAfter = "7d")
+    private LocalDateTime sentAt;
+}
@@ -0,0 +1,67 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxEvent;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Writes activities together with their outbox events in one Mongo transaction, so an activity is
+ * never stored without the event that feeds the recommendation pipeline. Delivery is left to
+ * {@link OutboxRelay}.
+ */
+@Service
+@RequiredArgsConstructor
+public class ActivityOutbox {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+
+    @Transactional
+    public Activity save(Activity activity) {
+        Activity savedActivity = mongoTemplate.insert(activity);
+        mongoTemplate.insert(toEvent(savedActivity, LocalDateTime.now()));
+        return savedActivity;
+    }
+
+    /**
+     * Bulk variant used by batch ingestion. Any write error aborts the transaction, so either every
+     * activity and event is stored or none is.
+     */
+    @Transactional
+    public void insertAll(List<Activity> activities) {
+        LocalDateTime now = LocalDateTime.now();
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Activity.class)
+                .insert(activities)
+                .execute();
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, OutboxEvent.class)
+                .insert(activities.stream().map(activity -> toEvent(activity, now)).toList())
+                .execute();
+    }
+
+    private OutboxEvent toEvent(Activity activity, LocalDateTime now) {
+        return OutboxEvent.builder()
+                .id(new ObjectId().toHexString())
+                .activityId(activity.getId())
+                .exchange(exchange)
+                .routingKey(routingKey)
+                .payload(activity)
+                .status(OutboxEvent.Status.PENDING)
+                .createdAt(now)
+                .nextAttemptAt(now)
+                .build();
+    }
+}
@@ -1,16 +1,36 @@
 package com.fitness.activityservice.service;
 
+import com.fitness.activityservice.dto.ActivityPage;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.dto.BatchActivityResult;
 import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
 import com.fitness.activityservice.repository.ActivityRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -20,6 +40,9 @@ public class ActivityService {
     private final ActivityRepository activityRepository;
     private final UserValidationService userValidationService;
     private final RabbitTemplate rabbitTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final ActivityOutbox activityOutbox;
+    private final ObjectProvider<AsyncActivityPublisher> asyncPublisher;
 
     @Value("${rabbitmq.exchange.name}")
     private String exchange;
@@ -27,25 +50,41 @@ public class ActivityService {
     @Value("${rabbitmq.routing.key}")
     private String routingKey;
 
+    @Value("${activity.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${activity.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${activity.page.max-size:100}")
+    private int maxPageSize;
+
+    // inline publishes straight after the save; outbox leaves delivery to OutboxRelay;
+    // async hands the event to AsyncActivityPublisher
+    @Value("${activity.events.mode:inline}")
+    private String eventsMode;
+
 
     public ActivityResponse trackActivity(ActivityRequest request) {
         boolean isValidUser = userValidationService.validateUser(request.getUserId());
         if(!isValidUser) {
             throw new RuntimeException("Invalid user"+request.getUserId());
         }
-        Activity activity = Activity.builder()
-                .userId(request.getUserId())
-                .type(request.getType())
-                .duration(request.getDuration())
-                .caloriesBurned(request.getCaloriesBurned())
-                .startTime(request.getStartTime())
-                .additionalMetrics(request.getAdditionalMetrics())
-                .build();
+        Activity activity = toActivity(request.getUserId(), request);
+
+        if(isOutboxMode()){
+            return mapToResponse(activityOutbox.save(activity));
+        }
 
         Activity savedActivity = activityRepository.save(activity);
 
         //Publishing to RabbitMQ for AI to process
 
+        AsyncActivityPublisher publisher = asyncPublisher.getIfAvailable();
+        if(publisher != null && publisher.publish(savedActivity)){
+            return mapToResponse(savedActivity);
+        }
+
         try{
             rabbitTemplate.convertAndSend(exchange, routingKey, savedActivity);
         }
@@ -56,6 +95,169 @@ public class ActivityService {
         return mapToResponse(savedActivity);
     }
 
+    /**
+     * Stores an upload of several activities for one user: the user is validated once, valid items
+     * are written with one unordered bulk insert and all stored activities are published on a single
+     * channel. Items failing validation or the insert are reported individually; a failed publish
+     * leaves the activities stored and marks them unpublished. In outbox mode the insert is a single
+     * transaction, so a write error fails every valid item.
+     */
+    public BatchActivityResponse trackActivities(String userId, List<ActivityRequest> requests) {
+        if(requests == null || requests.isEmpty()){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch must contain at least one activity");
+        }
+        if(requests.size() > maxBatchSize){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch exceeds the maximum of " + maxBatchSize + " activities");
+        }
+        boolean isValidUser = userValidationService.validateUser(userId);
+        if(!isValidUser) {
+            throw new RuntimeException("Invalid user"+userId);
+        }
+
+        BatchActivityResult[] results = new BatchActivityResult[requests.size()];
+        List<Activity> activities = new ArrayList<>(requests.size());
+        List<Integer> positions = new ArrayList<>(requests.size());
+        LocalDateTime now = LocalDateTime.now();
+        for(int i = 0; i < requests.size(); i++){
+            ActivityRequest request = requests.get(i);
+            String error = validate(request);
+            if(error != null){
+                results[i] = new BatchActivityResult(i, BatchActivityResult.Status.REJECTED, null, false, error);
+                continue;
+            }
+            // ids and audit dates are assigned up front: bulk inserts do not write generated ids
+            // back, and auditing treats an entity with an id as already persisted
+            Activity activity = toActivity(userId, request);
+            activity.setId(new ObjectId().toHexString());
+            activity.setCreatedAt(now);
+            activity.setUpdatedAt(now);
+            activities.add(activity);
+            positions.add(i);
+        }
+
+        Map<Integer, String> insertErrors;
+        boolean published;
+        if(isOutboxMode()){
+            insertErrors = insertAllWithEvents(activities);
+            published = insertErrors.isEmpty() && !activities.isEmpty();
+        }
+        else {
+            insertErrors = insertAll(activities);
+            List<Activity> inserted = new ArrayList<>(activities.size());
+            for(int i = 0; i < activities.size(); i++){
+                if(!insertErrors.containsKey(i)){
+                    inserted.add(activities.get(i));
+                }
+            }
+            published = publishAll(inserted);
+        }
+
+        int created = 0;
+        for(int i = 0; i < activities.size(); i++){
+            int position = positions.get(i);
+            String error = insertErrors.get(i);
+            if(error != null){
+                results[position] = new BatchActivityResult(position, BatchActivityResult.Status.FAILED, null, false, error);
+            }
+            else {
+                results[position] = new BatchActivityResult(position, BatchActivityResult.Status.CREATED, mapToResponse(activities.get(i)), published, null);
+                created++;
+            }
+        }
+        return new BatchActivityResponse(created, requests.size() - created, List.of(results));
+    }
+
+    private static String validate(ActivityRequest request) {
+        if(request == null){
+            return "Activity is empty";
+        }
+        if(request.getType() == null){
+            return "Activity type is required";
+        }
+        if(request.getDuration() == null || request.getDuration() <= 0){
+            return "Duration must be a positive number of minutes";
+        }
+        if(request.getCaloriesBurned() != null && request.getCaloriesBurned() < 0){
+            return "Calories burned must not be negative";
+        }
+        return null;
+    }
+
+    private Map<Integer, String> insertAll(List<Activity> activities) {
+        if(activities.isEmpty()){
+            return Map.of();
+        }
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)
+                    .insert(activities)
+                    .execute();
+            return Map.of();
+        }
+        catch (BulkOperationException e) {
+            Map<Integer, String> errors = new HashMap<>();
+            e.getErrors().forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+            log.warn("Bulk insert stored {} of {} activities", activities.size() - errors.size(), activities.size());
+            return errors;
+        }
+    }
+
+    private Map<Integer, String> insertAllWithEvents(List<Activity> activities) {
+        if(activities.isEmpty()){
+            return Map.of();
+        }
+        try {
+            activityOutbox.insertAll(activities);
+            return Map.of();
+        }
+        catch (DataAccessException | TransactionException e) {
+            log.error("Failed to store batch of {} activities with outbox events : ", activities.size(), e);
+            Map<Integer, String> errors = new HashMap<>();
+            for(int i = 0; i < activities.size(); i++){
+                errors.put(i, "Batch rolled back: " + e.getMessage());
+            }
+            return errors;
+        }
+    }
+
+    private boolean publishAll(List<Activity> activities) {
+        if(activities.isEmpty()){
+            return false;
+        }
+        AsyncActivityPublisher publisher = asyncPublisher.getIfAvailable();
+        // whatever does not fit in the async buffer is published inline below
+        List<Activity> unbuffered = publisher == null ? activities
+                : activities.stream().filter(activity -> !publisher.publish(activity)).toList();
+        if(unbuffered.isEmpty()){
+            return true;
+        }
+        try {
+            rabbitTemplate.invoke(operations -> {
+                unbuffered.forEach(activity -> operations.convertAndSend(exchange, routingKey, activity));
+                return null;
+            });
+            return true;
+        }
+        catch(Exception e){
+            log.error("Failed to publish batch of {} activities to RabbitMQ : ", unbuffered.size(), e);
+            return false;
+        }
+    }
+
+    private boolean isOutboxMode() {
+        return "outbox".equals(eventsMode);
+    }
+
+    private Activity toActivity(String userId, ActivityRequest request) {
+        return Activity.builder()
+                .userId(userId)
+                .type(request.getType())
+                .duration(request.getDuration())
+                .caloriesBurned(request.getCaloriesBurned())
+                .startTime(request.getStartTime())
+                .additionalMetrics(request.getAdditionalMetrics())
+                .build();
+    }
+
     private ActivityResponse mapToResponse(Activity activity) {
         ActivityResponse activityResponse = new ActivityResponse();
         activityResponse.setId(activity.getId());
@@ -78,6 +280,57 @@ public class ActivityService {
 
     }
 
+    /**
+     * Newest first, keyset paginated on (startTime, id) so each page is a range scan of the
+     * (userId, startTime, _id) index. Activities without a start time come last. The metrics map
+     * is left out unless asked for.
+     */
+    public ActivityPage getUserActivityPage(String userId, String cursor, Integer size, ActivityType type,
+                                            LocalDateTime from, LocalDateTime to, boolean includeMetrics) {
+        int pageSize = size == null ? defaultPageSize : Math.clamp(size, 1, maxPageSize);
+
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if(type != null){
+            criteria.and("type").is(type);
+        }
+        if(from != null || to != null){
+            Criteria startTime = criteria.and("startTime");
+            if(from != null){
+                startTime.gte(from);
+            }
+            if(to != null){
+                startTime.lt(to);
+            }
+        }
+        if(cursor != null && !cursor.isBlank()){
+            PageCursor position = PageCursor.decode(cursor);
+            if(position.sortKey() == null){
+                criteria.andOperator(Criteria.where("startTime").is(null).and("id").lt(position.id()));
+            }
+            else {
+                criteria.orOperator(
+                        Criteria.where("startTime").lt(position.sortKey()),
+                        Criteria.where("startTime").is(position.sortKey()).and("id").lt(position.id()),
+                        Criteria.where("startTime").is(null));
+            }
+        }
+
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "startTime", "id"))
+                .limit(pageSize + 1);
+        if(!includeMetrics){
+            query.fields().exclude("additionalMetrics");
+        }
+        List<Activity> activities = mongoTemplate.find(query, Activity.class);
+
+        if(activities.size() <= pageSize){
+            return new ActivityPage(activities.stream().map(this::mapToResponse).toList(), null);
+        }
+        List<Activity> page = activities.subList(0, pageSize);
+        Activity last = page.get(pageSize - 1);
+        return new ActivityPage(page.stream().map(this::mapToResponse).toList(), PageCursor.encode(last.getStartTime(), last.getId()));
+    }
+
     public ActivityResponse getActivityById(String activityId) {
         return activityRepository.findById(activityId)
                 .map(this::mapToResponse)
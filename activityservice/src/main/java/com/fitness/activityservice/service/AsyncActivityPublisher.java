@@ -0,0 +1,217 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes activity events off the request thread. {@link #publish} only offers the activity to a
+ * bounded ring buffer; a single publisher thread drains it in batches, sends each batch with
+ * correlated publisher confirms and then waits for the batch's confirms together. Nacked,
+ * returned and unconfirmed events go back to the front of the next batch until
+ * {@code activity.publisher.max-attempts} is reached. A full buffer is reported to the caller,
+ * which then publishes inline instead of dropping the event.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "activity.events.mode", havingValue = "async")
+public class AsyncActivityPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final BlockingQueue<Pending> buffer;
+    private final ArrayDeque<Pending> retries = new ArrayDeque<>();
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration confirmTimeout;
+    private final Duration retryBackoff;
+    private final Timer confirmLatency;
+    private final Counter acked;
+    private final Counter nacked;
+    private final Counter rejected;
+    private final Counter dropped;
+    private final Thread publisherThread;
+    private volatile boolean running = true;
+
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+
+    public AsyncActivityPublisher(@Qualifier("confirmingRabbitTemplate") RabbitTemplate rabbitTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${activity.publisher.buffer-size:10000}") int bufferSize,
+                                  @Value("${activity.publisher.batch-size:200}") int batchSize,
+                                  @Value("${activity.publisher.max-attempts:5}") int maxAttempts,
+                                  @Value("${activity.publisher.confirm-timeout:5s}") Duration confirmTimeout,
+                                  @Value("${activity.publisher.retry-backoff:1s}") Duration retryBackoff) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.confirmTimeout = confirmTimeout;
+        this.retryBackoff = retryBackoff;
+        Gauge.builder("activity.publisher.buffer", buffer, BlockingQueue::size)
+                .description("Activity events waiting to be published")
+                .register(meterRegistry);
+        this.confirmLatency = Timer.builder("activity.publisher.confirm")
+                .description("Time from send to publisher confirm")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.acked = confirms(meterRegistry, "ack");
+        this.nacked = confirms(meterRegistry, "nack");
+        this.rejected = Counter.builder("activity.publisher.rejected")
+                .description("Events refused because the buffer was full")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("activity.publisher.dropped")
+                .description("Events given up on after the last attempt")
+                .register(meterRegistry);
+        this.publisherThread = Thread.ofPlatform().name("activity-publisher").daemon(true).unstarted(this::run);
+    }
+
+    private static Counter confirms(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("activity.publisher.confirms").tag("result", result)
+                .description("Publisher confirms by result; nack includes returns and timeouts")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        publisherThread.start();
+    }
+
+    /**
+     * Queues the activity for publishing. Returns false when the buffer is full.
+     */
+    public boolean publish(Activity activity) {
+        boolean accepted = running && buffer.offer(new Pending(activity, 0));
+        if(!accepted){
+            rejected.increment();
+        }
+        return accepted;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while(running || !buffer.isEmpty() || !retries.isEmpty()){
+            try {
+                batch.clear();
+                while(batch.size() < batchSize && !retries.isEmpty()){
+                    batch.add(retries.poll());
+                }
+                if(batch.isEmpty()){
+                    Pending first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                    if(first == null){
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                buffer.drainTo(batch, batchSize - batch.size());
+                int failures = publishBatch(batch);
+                if(failures == batch.size() && running){
+                    Thread.sleep(retryBackoff.toMillis());
+                }
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch(Exception e){
+                log.error("Activity publisher loop failed : ", e);
+            }
+        }
+        if(!buffer.isEmpty() || !retries.isEmpty()){
+            log.warn("Activity publisher stopped with {} events unpublished", buffer.size() + retries.size());
+        }
+    }
+
+    private int publishBatch(List<Pending> batch) throws InterruptedException {
+        List<CorrelationData> correlations = new ArrayList<>(batch.size());
+        for(Pending pending : batch){
+            CorrelationData correlation = new CorrelationData(pending.activity().getId());
+            long sentAt = System.nanoTime();
+            correlation.getFuture().thenAccept(confirm ->
+                    confirmLatency.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS));
+            try {
+                rabbitTemplate.convertAndSend(exchange, routingKey, pending.activity(), correlation);
+            }
+            catch(Exception e){
+                correlation.getFuture().completeExceptionally(e);
+            }
+            correlations.add(correlation);
+        }
+
+        int failures = 0;
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        for(int i = 0; i < batch.size(); i++){
+            String error = awaitConfirm(correlations.get(i), deadline);
+            if(error == null){
+                acked.increment();
+                continue;
+            }
+            nacked.increment();
+            failures++;
+            Pending pending = batch.get(i);
+            if(pending.attempts() + 1 >= maxAttempts){
+                dropped.increment();
+                log.error("Giving up on activity event {} after {} attempts : {}",
+                        pending.activity().getId(), maxAttempts, error);
+            }
+            else {
+                log.warn("Activity event {} not confirmed, retrying : {}", pending.activity().getId(), error);
+                retries.add(new Pending(pending.activity(), pending.attempts() + 1));
+            }
+        }
+        return failures;
+    }
+
+    private String awaitConfirm(CorrelationData correlation, long deadline) throws InterruptedException {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+            if(!confirm.isAck()){
+                return "Nacked by broker: " + confirm.getReason();
+            }
+            if(correlation.getReturned() != null){
+                return "Returned as unroutable: " + correlation.getReturned().getReplyText();
+            }
+            return null;
+        }
+        catch(TimeoutException e){
+            return "No publisher confirm within " + confirmTimeout;
+        }
+        catch(ExecutionException e){
+            return String.valueOf(e.getCause().getMessage());
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        publisherThread.join(confirmTimeout.multipliedBy(2).toMillis());
+    }
+
+    private record Pending(Activity activity, int attempts) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.OutboxEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Drains the activity outbox. Due pending events are read in {@code nextAttemptAt} order, which the
+ * {@code status_next_attempt} index serves without an in-memory sort; a new event is due at its
+ * creation time, so fresh events still go out oldest first. They are published with correlated
+ * publisher confirms and marked sent once the broker has acked them and nothing came back as
+ * unroutable. Failed events are retried with exponential backoff. Delivery is at-least-once: a
+ * crash between the ack and the status update, or two instances polling at once, can publish an
+ * event twice, which the AI service already tolerates through its processed-activity filter.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "activity.events.mode", havingValue = "outbox")
+public class OutboxRelay {
+
+    private final MongoTemplate mongoTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final int batchSize;
+    private final Duration confirmTimeout;
+    private final Duration retryBackoff;
+    private final Duration maxBackoff;
+    private final Counter sent;
+    private final Counter failed;
+    private final Timer relayTimer;
+    private final AtomicLong oldestPendingMillis = new AtomicLong();
+
+    public OutboxRelay(MongoTemplate mongoTemplate,
+                       @Qualifier("confirmingRabbitTemplate") RabbitTemplate rabbitTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${activity.outbox.batch-size:100}") int batchSize,
+                       @Value("${activity.outbox.confirm-timeout:5s}") Duration confirmTimeout,
+                       @Value("${activity.outbox.retry-backoff:1s}") Duration retryBackoff,
+                       @Value("${activity.outbox.max-backoff:5m}") Duration maxBackoff) {
+        this.mongoTemplate = mongoTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.batchSize = batchSize;
+        this.confirmTimeout = confirmTimeout;
+        this.retryBackoff = retryBackoff;
+        this.maxBackoff = maxBackoff;
+        this.sent = Counter.builder("activity.outbox.relayed").tag("result", "sent")
+                .description("Outbox events confirmed by the broker")
+                .register(meterRegistry);
+        this.failed = Counter.builder("activity.outbox.relayed").tag("result", "failed")
+                .description("Outbox events nacked, returned or timed out")
+                .register(meterRegistry);
+        this.relayTimer = Timer.builder("activity.outbox.relay")
+                .description("Time to publish and confirm one outbox batch")
+                .register(meterRegistry);
+        Gauge.builder("activity.outbox.lag", oldestPendingMillis, AtomicLong::get)
+                .description("Age of the oldest event in the last relayed batch")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${activity.outbox.poll-interval:500ms}")
+    public void relay() {
+        int relayed;
+        do {
+            relayed = relayTimer.record(this::relayBatch);
+        } while(relayed == batchSize);
+    }
+
+    private int relayBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        Query pending = new Query(where("status").is(OutboxEvent.Status.PENDING).and("nextAttemptAt").lte(now))
+                .with(Sort.by("nextAttemptAt"))
+                .limit(batchSize);
+        List<OutboxEvent> events = mongoTemplate.find(pending, OutboxEvent.class);
+        if(events.isEmpty()){
+            oldestPendingMillis.set(0);
+            return 0;
+        }
+        LocalDateTime oldest = events.stream().map(OutboxEvent::getCreatedAt).min(LocalDateTime::compareTo).orElse(now);
+        oldestPendingMillis.set(Duration.between(oldest, now).toMillis());
+
+        List<CorrelationData> correlations = new ArrayList<>(events.size());
+        for(OutboxEvent event : events){
+            CorrelationData correlation = new CorrelationData(event.getId());
+            try {
+                rabbitTemplate.convertAndSend(event.getExchange(), event.getRoutingKey(), event.getPayload(), correlation);
+            }
+            catch(Exception e){
+                correlation.getFuture().completeExceptionally(e);
+            }
+            correlations.add(correlation);
+        }
+
+        List<String> confirmed = new ArrayList<>(events.size());
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        for(int i = 0; i < events.size(); i++){
+            OutboxEvent event = events.get(i);
+            String error = awaitConfirm(correlations.get(i), deadline);
+            if(error == null){
+                confirmed.add(event.getId());
+            }
+            else {
+                scheduleRetry(event, error);
+            }
+        }
+
+        if(!confirmed.isEmpty()){
+            mongoTemplate.updateMulti(new Query(where("_id").in(confirmed)),
+                    new Update().set("status", OutboxEvent.Status.SENT).set("sentAt", LocalDateTime.now()),
+                    OutboxEvent.class);
+        }
+        sent.increment(confirmed.size());
+        failed.increment(events.size() - confirmed.size());
+        return events.size();
+    }
+
+    private String awaitConfirm(CorrelationData correlation, long deadline) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+            if(!confirm.isAck()){
+                return "Nacked by broker: " + confirm.getReason();
+            }
+            if(correlation.getReturned() != null){
+                return "Returned as unroutable: " + correlation.getReturned().getReplyText();
+            }
+            return null;
+        }
+        catch(TimeoutException e){
+            return "No publisher confirm within " + confirmTimeout;
+        }
+        catch(ExecutionException e){
+            return String.valueOf(e.getCause().getMessage());
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return "Interrupted while waiting for publisher confirm";
+        }
+    }
+
+    private void scheduleRetry(OutboxEvent event, String error) {
+        int attempts = event.getAttempts() + 1;
+        long backoffMillis = retryBackoff.toMillis() << Math.min(attempts - 1, 20);
+        Duration backoff = Duration.ofMillis(Math.min(backoffMillis, maxBackoff.toMillis()));
+        log.warn("Failed to relay activity event {} (attempt {}), retrying in {} : {}",
+                event.getActivityId(), attempts, backoff, error);
+        mongoTemplate.updateFirst(new Query(where("_id").is(event.getId())),
+                new Update().set("attempts", attempts)
+                        .set("lastError", error)
+                        .set("nextAttemptAt", LocalDateTime.now().plus(backoff)),
+                OutboxEvent.class);
+    }
+}
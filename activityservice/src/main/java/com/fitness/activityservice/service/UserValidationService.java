@@ -1,39 +1,98 @@
 package com.fitness.activityservice.service;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 
+import java.time.Duration;
+
+/**
+ * Validates user ids against USER-SERVICE. Answers are cached in-process, valid users for
+ * {@code user-validation.cache.positive-ttl} and unknown or invalid ones for the much shorter
+ * {@code negative-ttl}, so a newly registered user is accepted soon after. Concurrent lookups of
+ * the same id share one remote call. Errors other than 400/404 are not cached.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class UserValidationService {
 
+    private enum Validation {
+        VALID, INVALID, NOT_FOUND, BAD_REQUEST, UNAVAILABLE;
+
+        boolean cacheable() {
+            return this != UNAVAILABLE;
+        }
+    }
+
     private final WebClient userServiceWebClient;
+    private final Cache<String, Validation> validations;
+    private final boolean cacheEnabled;
+    private final Timer validationLatency;
+
+    public UserValidationService(WebClient userServiceWebClient,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${user-validation.cache.enabled:true}") boolean cacheEnabled,
+                                 @Value("${user-validation.cache.max-size:100000}") long maxSize,
+                                 @Value("${user-validation.cache.positive-ttl:10m}") Duration positiveTtl,
+                                 @Value("${user-validation.cache.negative-ttl:30s}") Duration negativeTtl) {
+        this.userServiceWebClient = userServiceWebClient;
+        this.cacheEnabled = cacheEnabled;
+        this.validations = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.creating((String userId, Validation validation) ->
+                        validation == Validation.VALID ? positiveTtl : validation.cacheable() ? negativeTtl : Duration.ZERO))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, validations, "userValidation");
+        this.validationLatency = Timer.builder("user.validation.remote")
+                .description("Latency of user validation calls to USER-SERVICE")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
     public boolean validateUser(String userId){
+        Validation validation = cacheEnabled
+                ? validations.get(userId, this::callUserService)
+                : callUserService(userId);
+        return switch (validation) {
+            case VALID -> true;
+            case NOT_FOUND -> throw new RuntimeException("User not found : "+userId);
+            case BAD_REQUEST -> throw new RuntimeException("Invalid Request: "+userId);
+            default -> false;
+        };
+    }
+
+    private Validation callUserService(String userId) {
         log.info("Calling User Validation API for userId: {}",userId);
-        try {
-            Boolean isValid = userServiceWebClient.get()
-                    .uri("/api/users/{userId}/validate", userId)
-                    .retrieve()
-                    .bodyToMono(Boolean.class)
-                    .block();
-
-            return Boolean.TRUE.equals(isValid);
-        }
-        catch (WebClientResponseException e){
-            if(e.getStatusCode() == HttpStatus.NOT_FOUND){
-                throw new RuntimeException("User not found : "+userId);
+        return validationLatency.record(() -> {
+            try {
+                Boolean isValid = userServiceWebClient.get()
+                        .uri("/api/users/{userId}/validate", userId)
+                        .retrieve()
+                        .bodyToMono(Boolean.class)
+                        .block();
+
+                return Boolean.TRUE.equals(isValid) ? Validation.VALID : Validation.INVALID;
             }
-            else if(e.getStatusCode() == HttpStatus.BAD_REQUEST){
-                throw new RuntimeException("Invalid Request: "+userId);
+            catch (WebClientResponseException e){
+                if(e.getStatusCode() == HttpStatus.NOT_FOUND){
+                    return Validation.NOT_FOUND;
+                }
+                else if(e.getStatusCode() == HttpStatus.BAD_REQUEST){
+                    return Validation.BAD_REQUEST;
+                }
+                return Validation.UNAVAILABLE;
             }
-        }
-        return false;
+        });
     }
 
 }
@@ -0,0 +1,53 @@
+package com.fitness.activityservice.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConfirmingRabbitConfigTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(RabbitAutoConfiguration.class))
+            .withUserConfiguration(ConfirmingRabbitConfig.class);
+
+    private static final Message MESSAGE = new Message(new byte[0], new MessageProperties());
+
+    @Test
+    void inlineModeKeepsASinglePlainTemplate() {
+        contextRunner.withPropertyValues("activity.events.mode=inline").run(context -> {
+            assertThat(context).hasSingleBean(RabbitTemplate.class);
+            ConnectionFactory connectionFactory = context.getBean(ConnectionFactory.class);
+            assertThat(connectionFactory.isPublisherConfirms()).isFalse();
+            assertThat(connectionFactory.isPublisherReturns()).isFalse();
+            assertThat(context.getBean(RabbitTemplate.class).isMandatoryFor(MESSAGE)).isFalse();
+        });
+    }
+
+    @Test
+    void confirmsAndReturnsAreScopedToThePublisherConnection() {
+        contextRunner.withPropertyValues("activity.events.mode=outbox").run(context -> {
+            ConnectionFactory connectionFactory = context.getBean(ConnectionFactory.class);
+            RabbitTemplate plain = context.getBean(RabbitTemplate.class);
+            RabbitTemplate confirming = context.getBean("confirmingRabbitTemplate", RabbitTemplate.class);
+
+            assertThat(plain).isNotSameAs(confirming);
+            assertThat(connectionFactory.isPublisherConfirms()).isFalse();
+            assertThat(plain.isMandatoryFor(MESSAGE)).isFalse();
+            assertThat(ReflectionTestUtils.getField(plain, "usePublisherConnection")).isEqualTo(false);
+
+            ConnectionFactory publisherConnectionFactory = connectionFactory.getPublisherConnectionFactory();
+            assertThat(publisherConnectionFactory.isPublisherConfirms()).isTrue();
+            assertThat(publisherConnectionFactory.isPublisherReturns()).isTrue();
+            assertThat(confirming.isMandatoryFor(MESSAGE)).isTrue();
+            assertThat(ReflectionTestUtils.getField(confirming, "usePublisherConnection")).isEqualTo(true);
+        });
+    }
+}
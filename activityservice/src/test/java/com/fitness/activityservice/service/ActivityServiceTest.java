@@ -0,0 +1,238 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityPage;
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.dto.BatchActivityResult;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.repository.ActivityRepository;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActivityServiceTest {
+
+    private static final LocalDateTime MORNING = LocalDateTime.of(2025, 3, 1, 7, 30);
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final UserValidationService userValidationService = mock(UserValidationService.class);
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ActivityService activityService = new ActivityService(mock(ActivityRepository.class),
+            userValidationService, rabbitTemplate, mongoTemplate, mock(ActivityOutbox.class),
+            mock(ObjectProvider.class));
+
+    ActivityServiceTest() {
+        ReflectionTestUtils.setField(activityService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(activityService, "maxPageSize", 5);
+        ReflectionTestUtils.setField(activityService, "maxBatchSize", 3);
+        ReflectionTestUtils.setField(activityService, "exchange", "fitness.exchange");
+        ReflectionTestUtils.setField(activityService, "routingKey", "activity.tracking");
+    }
+
+    private static String id(int n) {
+        return String.format("%024x", n);
+    }
+
+    private static Activity activity(String id, LocalDateTime startTime) {
+        return Activity.builder().id(id).userId("user-1").startTime(startTime).build();
+    }
+
+    private static ActivityRequest request(ActivityType type, Integer duration) {
+        ActivityRequest request = new ActivityRequest();
+        request.setType(type);
+        request.setDuration(duration);
+        request.setCaloriesBurned(300);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<List<Activity>> bulkInsert(BulkOperations bulkOperations) {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)).thenReturn(bulkOperations);
+        ArgumentCaptor<List<Activity>> inserted = ArgumentCaptor.forClass(List.class);
+        when(bulkOperations.insert(inserted.capture())).thenReturn(bulkOperations);
+        return inserted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void publishOnOneChannel() {
+        when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class)))
+                .thenAnswer(invocation -> invocation.<RabbitOperations.OperationsCallback<Object>>getArgument(0).doInRabbit(rabbitTemplate));
+    }
+
+    private List<Query> queries(int count) {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(count)).find(queries.capture(), eq(Activity.class));
+        return queries.getAllValues();
+    }
+
+    @Test
+    void cursorResumesAfterTheLastStartTimeAndId() {
+        when(mongoTemplate.find(any(Query.class), eq(Activity.class))).thenReturn(List.of(
+                activity(id(3), MORNING), activity(id(2), MORNING), activity(id(1), MORNING.minusDays(1))));
+
+        ActivityPage first = activityService.getUserActivityPage("user-1", null, null, null, null, null, false);
+        assertThat(first.getItems()).extracting(ActivityResponse::getId).containsExactly(id(3), id(2));
+        assertThat(first.getNextCursor()).isNotNull();
+
+        activityService.getUserActivityPage("user-1", first.getNextCursor(), null, null, null, null, false);
+        Query resumed = queries(2).get(1);
+        List<Document> position = resumed.getQueryObject().getList("$or", Document.class);
+        assertThat(position).containsExactly(
+                new Document("startTime", new Document("$lt", MORNING)),
+                new Document("startTime", MORNING).append("id", new Document("$lt", id(2))),
+                new Document("startTime", null));
+        assertThat(resumed.getLimit()).isEqualTo(3);
+        assertThat(resumed.getSortObject()).isEqualTo(new Document("startTime", -1).append("id", -1));
+    }
+
+    @Test
+    void cursorOnAnActivityWithoutStartTimeStaysAmongThoseWithoutOne() {
+        // activities without a start time sort last, after every dated one
+        when(mongoTemplate.find(any(Query.class), eq(Activity.class))).thenReturn(List.of(
+                activity(id(5), MORNING), activity(id(4), null), activity(id(3), null)));
+
+        ActivityPage first = activityService.getUserActivityPage("user-1", null, null, null, null, null, false);
+        assertThat(first.getItems()).extracting(ActivityResponse::getId).containsExactly(id(5), id(4));
+
+        activityService.getUserActivityPage("user-1", first.getNextCursor(), null, null, null, null, false);
+        Document resumed = queries(2).get(1).getQueryObject();
+        assertThat(resumed.get("$or")).isNull();
+        assertThat(resumed.getList("$and", Document.class))
+                .containsExactly(new Document("startTime", null).append("id", new Document("$lt", id(4))));
+        assertThat(resumed.getString("userId")).isEqualTo("user-1");
+    }
+
+    @Test
+    void lastPageHasNoCursorAndMetricsAreOptIn() {
+        when(mongoTemplate.find(any(Query.class), eq(Activity.class))).thenReturn(List.of(activity(id(1), MORNING)));
+
+        ActivityPage page = activityService.getUserActivityPage("user-1", null, 50, null, null, null, false);
+        activityService.getUserActivityPage("user-1", null, null, null, null, null, true);
+
+        assertThat(page.getNextCursor()).isNull();
+        List<Query> queries = queries(2);
+        assertThat(queries.get(0).getLimit()).isEqualTo(6);
+        assertThat(queries.get(0).getFieldsObject()).isEqualTo(new Document("additionalMetrics", 0));
+        assertThat(queries.get(1).getFieldsObject()).isEmpty();
+    }
+
+    @Test
+    void malformedCursorIsABadRequest() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String noId = encoder.encodeToString("2025-03-01T07:30,".getBytes(StandardCharsets.UTF_8));
+        String badDate = encoder.encodeToString(("yesterday," + id(1)).getBytes(StandardCharsets.UTF_8));
+        String tamperedId = encoder.encodeToString("2025-03-01T07:30,a2".getBytes(StandardCharsets.UTF_8));
+
+        for(String cursor : List.of("not base64!", noId, badDate, tamperedId)){
+            assertThatThrownBy(() -> activityService.getUserActivityPage("user-1", cursor, null, null, null, null, false))
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchValidatesTheUserOnceAndInsertsAndPublishesInOneGo() {
+        when(userValidationService.validateUser("user-1")).thenReturn(true);
+        ArgumentCaptor<List<Activity>> inserted = bulkInsert(mock(BulkOperations.class));
+        publishOnOneChannel();
+
+        BatchActivityResponse response = activityService.trackActivities("user-1", List.of(
+                request(ActivityType.RUNNING, 30), request(null, 30), request(ActivityType.CYCLING, 60)));
+
+        assertThat(response.getCreated()).isEqualTo(2);
+        assertThat(response.getFailed()).isEqualTo(1);
+        assertThat(response.getResults()).extracting(BatchActivityResult::getStatus).containsExactly(
+                BatchActivityResult.Status.CREATED, BatchActivityResult.Status.REJECTED, BatchActivityResult.Status.CREATED);
+        assertThat(response.getResults().get(1).getError()).isEqualTo("Activity type is required");
+        assertThat(response.getResults().get(0).isPublished()).isTrue();
+        assertThat(inserted.getValue()).hasSize(2).allSatisfy(activity -> {
+            assertThat(ObjectId.isValid(activity.getId())).isTrue();
+            assertThat(activity.getUserId()).isEqualTo("user-1");
+        });
+        verify(userValidationService, times(1)).validateUser("user-1");
+        verify(rabbitTemplate, times(1)).invoke(any(RabbitOperations.OperationsCallback.class));
+        verify(rabbitTemplate, times(2)).convertAndSend(eq("fitness.exchange"), eq("activity.tracking"), any(Activity.class));
+    }
+
+    @Test
+    void batchReportsItemsTheBulkInsertRejected() {
+        when(userValidationService.validateUser("user-1")).thenReturn(true);
+        BulkOperations bulkOperations = mock(BulkOperations.class);
+        ArgumentCaptor<List<Activity>> inserted = bulkInsert(bulkOperations);
+        BulkOperationException duplicate = mock(BulkOperationException.class);
+        when(duplicate.getErrors()).thenReturn(List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)));
+        when(bulkOperations.execute()).thenThrow(duplicate);
+        publishOnOneChannel();
+
+        BatchActivityResponse response = activityService.trackActivities("user-1", List.of(
+                request(ActivityType.RUNNING, 30), request(ActivityType.RUNNING, 31), request(ActivityType.RUNNING, 32)));
+
+        assertThat(response.getResults()).extracting(BatchActivityResult::getStatus).containsExactly(
+                BatchActivityResult.Status.CREATED, BatchActivityResult.Status.FAILED, BatchActivityResult.Status.CREATED);
+        assertThat(response.getResults().get(1).getError()).isEqualTo("duplicate key");
+        verify(rabbitTemplate).convertAndSend("fitness.exchange", "activity.tracking", inserted.getValue().get(0));
+        verify(rabbitTemplate).convertAndSend("fitness.exchange", "activity.tracking", inserted.getValue().get(2));
+        verify(rabbitTemplate, never()).convertAndSend("fitness.exchange", "activity.tracking", inserted.getValue().get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedBatchPublishKeepsTheActivitiesAndMarksThemUnpublished() {
+        when(userValidationService.validateUser("user-1")).thenReturn(true);
+        bulkInsert(mock(BulkOperations.class));
+        when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class))).thenThrow(new AmqpConnectException(new IOException("down")));
+
+        BatchActivityResponse response = activityService.trackActivities("user-1", List.of(request(ActivityType.RUNNING, 30)));
+
+        assertThat(response.getCreated()).isEqualTo(1);
+        assertThat(response.getResults().get(0).getStatus()).isEqualTo(BatchActivityResult.Status.CREATED);
+        assertThat(response.getResults().get(0).isPublished()).isFalse();
+    }
+
+    @Test
+    void emptyOrOversizedBatchIsABadRequest() {
+        List<ActivityRequest> tooMany = List.of(request(ActivityType.RUNNING, 30), request(ActivityType.RUNNING, 30),
+                request(ActivityType.RUNNING, 30), request(ActivityType.RUNNING, 30));
+
+        for(List<ActivityRequest> batch : List.of(List.<ActivityRequest>of(), tooMany)){
+            assertThatThrownBy(() -> activityService.trackActivities("user-1", batch))
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+        verify(userValidationService, never()).validateUser(any());
+    }
+}
@@ -0,0 +1,151 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboxRelay relay = new OutboxRelay(mongoTemplate, rabbitTemplate, meterRegistry, 10,
+            Duration.ofMillis(200), Duration.ofSeconds(1), Duration.ofMinutes(5));
+
+    private static OutboxEvent event(String id, int attempts) {
+        return OutboxEvent.builder()
+                .id(id)
+                .activityId("activity-" + id)
+                .exchange("fitness.exchange")
+                .routingKey("activity.tracking")
+                .payload(Activity.builder().id("activity-" + id).userId("user").build())
+                .status(OutboxEvent.Status.PENDING)
+                .attempts(attempts)
+                .createdAt(LocalDateTime.now().minusSeconds(5))
+                .nextAttemptAt(LocalDateTime.now().minusSeconds(5))
+                .build();
+    }
+
+    /**
+     * Answers each publish the way the broker would for the event with that correlation id.
+     */
+    private void broker(Map<String, String> outcomes) {
+        doAnswer(invocation -> {
+            CorrelationData correlation = invocation.getArgument(3);
+            switch(outcomes.get(correlation.getId())){
+                case "ack" -> correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+                case "nack" -> correlation.getFuture().complete(new CorrelationData.Confirm(false, "queue full"));
+                case "returned" -> {
+                    correlation.setReturned(new ReturnedMessage(new Message(new byte[0], new MessageProperties()),
+                            312, "NO_ROUTE", "fitness.exchange", "activity.tracking"));
+                    correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+                }
+                case "throw" -> throw new IllegalStateException("channel closed");
+                default -> {
+                    // never confirmed
+                }
+            }
+            return null;
+        }).when(rabbitTemplate).convertAndSend(eq("fitness.exchange"), eq("activity.tracking"), any(Object.class), any(CorrelationData.class));
+    }
+
+    private double relayed(String result) {
+        return meterRegistry.get("activity.outbox.relayed").tag("result", result).counter().count();
+    }
+
+    @Test
+    void ackedEventsAreMarkedSentAndFailuresRescheduled() {
+        when(mongoTemplate.find(any(Query.class), eq(OutboxEvent.class)))
+                .thenReturn(List.of(event("1", 0), event("2", 0), event("3", 2), event("4", 0), event("5", 0)));
+        broker(Map.of("1", "ack", "2", "nack", "3", "returned", "4", "throw", "5", "silent"));
+
+        relay.relay();
+
+        ArgumentCaptor<Query> sentQuery = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> sentUpdate = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateMulti(sentQuery.capture(), sentUpdate.capture(), eq(OutboxEvent.class));
+        assertThat(sentQuery.getValue().getQueryObject().get("_id", Document.class).getList("$in", String.class))
+                .containsExactly("1");
+        assertThat(sentUpdate.getValue().getUpdateObject().get("$set", Document.class).get("status"))
+                .isEqualTo(OutboxEvent.Status.SENT);
+
+        ArgumentCaptor<Query> retryQuery = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> retryUpdate = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(4)).updateFirst(retryQuery.capture(), retryUpdate.capture(), eq(OutboxEvent.class));
+        Map<Object, Document> retries = new HashMap<>();
+        for(int i = 0; i < retryQuery.getAllValues().size(); i++){
+            retries.put(retryQuery.getAllValues().get(i).getQueryObject().get("_id"),
+                    retryUpdate.getAllValues().get(i).getUpdateObject().get("$set", Document.class));
+        }
+
+        assertThat(retries).containsOnlyKeys("2", "3", "4", "5");
+        assertThat(retries.get("2").getString("lastError")).contains("queue full");
+        assertThat(retries.get("3").getString("lastError")).contains("NO_ROUTE");
+        assertThat(retries.get("4").getString("lastError")).contains("channel closed");
+        assertThat(retries.get("5").getString("lastError")).contains("No publisher confirm");
+        assertThat(retries.get("2").getInteger("attempts")).isEqualTo(1);
+        assertThat(retries.get("3").getInteger("attempts")).isEqualTo(3);
+
+        // backoff doubles per attempt: 1s after the first failure, 4s after the third
+        LocalDateTime now = LocalDateTime.now();
+        assertThat((LocalDateTime) retries.get("2").get("nextAttemptAt"))
+                .isBetween(now.plusNanos(500_000_000), now.plusSeconds(1));
+        assertThat((LocalDateTime) retries.get("3").get("nextAttemptAt"))
+                .isBetween(now.plusNanos(3_500_000_000L), now.plusSeconds(4));
+
+        assertThat(relayed("sent")).isEqualTo(1);
+        assertThat(relayed("failed")).isEqualTo(4);
+    }
+
+    @Test
+    void nothingIsUpdatedWhenNoEventIsPending() {
+        when(mongoTemplate.find(any(Query.class), eq(OutboxEvent.class))).thenReturn(List.of());
+
+        relay.relay();
+
+        verify(rabbitTemplate, never()).convertAndSend(any(String.class), any(String.class), any(Object.class), any(CorrelationData.class));
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(Update.class), eq(OutboxEvent.class));
+        assertThat(meterRegistry.get("activity.outbox.lag").gauge().value()).isZero();
+    }
+
+    @Test
+    void pendingEventsAreReadInTheOrderOfTheStatusNextAttemptIndex() {
+        when(mongoTemplate.find(any(Query.class), eq(OutboxEvent.class))).thenReturn(List.of());
+
+        relay.relay();
+
+        ArgumentCaptor<Query> pending = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(pending.capture(), eq(OutboxEvent.class));
+        assertThat(pending.getValue().getQueryObject().keySet()).containsExactly("status", "nextAttemptAt");
+        assertThat(pending.getValue().getSortObject()).isEqualTo(new Document("nextAttemptAt", 1));
+        assertThat(pending.getValue().getLimit()).isEqualTo(10);
+    }
+}
@@ -0,0 +1,52 @@
+package com.fitness.activityservice.service;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageCursorTest {
+
+    private static final String ID = new ObjectId().toHexString();
+    private static final LocalDateTime AT = LocalDateTime.of(2025, 3, 1, 12, 0, 30, 123_000_000);
+
+    private static String encoded(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void roundTripsWithAndWithoutASortKey() {
+        assertThat(PageCursor.decode(PageCursor.encode(AT, ID))).isEqualTo(new PageCursor(AT, ID));
+        assertThat(PageCursor.decode(PageCursor.encode(null, ID))).isEqualTo(new PageCursor(null, ID));
+    }
+
+    @Test
+    void malformedOrTamperedCursorsAreBadRequests() {
+        List<String> cursors = List.of(
+                "not base64!",
+                encoded(AT.toString()),
+                encoded(AT + ","),
+                encoded("yesterday," + ID),
+                encoded(AT + "," + ID + ",extra"),
+                // ids are compared against ObjectIds, so anything else is not a position we issued
+                encoded(AT + ",r1"),
+                encoded(AT + "," + ID.substring(1) + "g"),
+                encoded(AT + ",{\"$gt\":\"\"}"),
+                encoded(AT + "," + ID) + "A".repeat(200));
+
+        for(String cursor : cursors){
+            assertThatThrownBy(() -> PageCursor.decode(cursor))
+                    .as(cursor)
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+    }
+}
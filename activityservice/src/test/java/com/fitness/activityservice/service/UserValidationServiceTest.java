@@ -0,0 +1,125 @@
+package com.fitness.activityservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserValidationServiceTest {
+
+    private static final Duration NEGATIVE_TTL = Duration.ofMillis(200);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile HttpStatus status = HttpStatus.OK;
+    private volatile String body = "true";
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    private final WebClient userServiceWebClient = WebClient.builder()
+            .exchangeFunction(request -> Mono.fromCallable(() -> {
+                calls.incrementAndGet();
+                release.await(5, TimeUnit.SECONDS);
+                return ClientResponse.create(status)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(body)
+                        .build();
+            }))
+            .build();
+
+    private UserValidationService service(boolean cacheEnabled) {
+        return new UserValidationService(userServiceWebClient, meterRegistry, cacheEnabled, 100,
+                Duration.ofMinutes(10), NEGATIVE_TTL);
+    }
+
+    @Test
+    void validUsersAreCachedAndTheRemoteCallIsTimed() {
+        UserValidationService service = service(true);
+
+        assertThat(service.validateUser("user-1")).isTrue();
+        assertThat(service.validateUser("user-1")).isTrue();
+        assertThat(service.validateUser("user-2")).isTrue();
+
+        assertThat(calls).hasValue(2);
+        assertThat(meterRegistry.get("user.validation.remote").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "userValidation").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void unknownUsersAreCachedOnlyForTheNegativeTtl() throws InterruptedException {
+        status = HttpStatus.NOT_FOUND;
+        body = "";
+        UserValidationService service = service(true);
+
+        for(int i = 0; i < 3; i++){
+            assertThatThrownBy(() -> service.validateUser("user-1")).hasMessage("User not found : user-1");
+        }
+        assertThat(calls).hasValue(1);
+
+        // the user registers and the negative entry expires
+        status = HttpStatus.OK;
+        body = "true";
+        Thread.sleep(NEGATIVE_TTL.toMillis() * 2);
+
+        assertThat(service.validateUser("user-1")).isTrue();
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void unavailableUserServiceIsNotCached() {
+        status = HttpStatus.SERVICE_UNAVAILABLE;
+        body = "";
+        UserValidationService service = service(true);
+
+        assertThat(service.validateUser("user-1")).isFalse();
+        assertThat(service.validateUser("user-1")).isFalse();
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void concurrentLookupsOfOneUserShareOneCall() throws InterruptedException {
+        release = new CountDownLatch(1);
+        UserValidationService service = service(true);
+
+        List<CompletableFuture<Boolean>> lookups = new ArrayList<>();
+        for(int i = 0; i < 8; i++){
+            lookups.add(CompletableFuture.supplyAsync(() -> service.validateUser("user-1")));
+        }
+        // hold the first call open until the other lookups have queued up behind it
+        while(calls.get() == 0){
+            Thread.onSpinWait();
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(lookups).allSatisfy(lookup -> assertThat(lookup.join()).isTrue());
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void disabledCacheCallsEveryTime() {
+        UserValidationService service = service(false);
+
+        service.validateUser("user-1");
+        service.validateUser("user-1");
+
+        assertThat(calls).hasValue(2);
+    }
+}
@@ -0,0 +1,57 @@
+package com.fitness.aiservice.benchmark;
+
+import com.fitness.aiservice.loadtest.GeminiPayloads;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.service.GeminiResponseParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link GeminiResponseParser} with the previous tree and regex based parsing
+ * on generateContent payloads of increasing size. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="GeminiResponseParserBenchmark -prof gc"}
+ * to include allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GeminiResponseParserBenchmark {
+
+    @Param({"3", "12"})
+    private int items;
+
+    private String payload;
+    private GeminiResponseParser parser;
+    private LegacyGeminiResponseParser legacyParser;
+
+    @Setup
+    public void setup() {
+        payload = GeminiPayloads.response(items);
+        parser = new GeminiResponseParser();
+        legacyParser = new LegacyGeminiResponseParser();
+    }
+
+    @Benchmark
+    public Recommendation legacy() throws Exception {
+        return legacyParser.parse(payload);
+    }
+
+    @Benchmark
+    public Recommendation streaming() throws Exception {
+        return parser.toRecommendation(parser.parseAnalysis(payload)).build();
+    }
+}
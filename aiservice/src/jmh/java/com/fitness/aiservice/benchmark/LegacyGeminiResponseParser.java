@@ -0,0 +1,93 @@
+package com.fitness.aiservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.model.Recommendation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Response handling as it was in {@code ActivityAIService.processAiResponse} before
+ * {@link com.fitness.aiservice.service.GeminiResponseParser}: a new mapper per call, two trees,
+ * regex based fence stripping and {@code String.format}. Kept only as the benchmark baseline.
+ */
+class LegacyGeminiResponseParser {
+
+    Recommendation parse(String aiResponse) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode rootNode = mapper.readTree(aiResponse);
+        JsonNode textNode = rootNode.path("candidates")
+                .get(0)
+                .path("content")
+                .path("parts")
+                .get(0)
+                .path("text");
+        String jsonContent = textNode.asText()
+                .replaceAll("```json\\n","")
+                .replaceAll("\\n```","")
+                .trim();
+
+        JsonNode analysisJson = mapper.readTree(jsonContent);
+        JsonNode analysisNode = analysisJson.path("analysis");
+        StringBuilder fullAnalysis = new StringBuilder();
+        addAnalysisSection(fullAnalysis,analysisNode,"overall","Overall:");
+        addAnalysisSection(fullAnalysis,analysisNode,"pace","Pace:");
+        addAnalysisSection(fullAnalysis,analysisNode,"heartRate","Heart Rate:");
+        addAnalysisSection(fullAnalysis,analysisNode,"caloriesBurned","Calories Burned:");
+
+        return Recommendation.builder()
+                .recommendation(fullAnalysis.toString().trim())
+                .improvements(extractImprovements(analysisJson.path("improvements")))
+                .suggestions(extractSuggestions(analysisJson.path("suggestions")))
+                .safety(extractSafetyGuidelines(analysisJson.path("safety")))
+                .build();
+    }
+
+    private List<String> extractSafetyGuidelines(JsonNode safetyNode) {
+        List<String> safety = new ArrayList<>();
+        if(safetyNode.isArray()){
+            safetyNode.forEach(item -> safety.add(item.asText()));
+        }
+        return safety.isEmpty()?
+                Collections.singletonList("Follow General Safety Guidelines"):
+                safety;
+    }
+
+    private List<String> extractSuggestions(JsonNode suggestionsNode) {
+        List<String> suggestions = new ArrayList<>();
+        if(suggestionsNode.isArray()){
+            suggestionsNode.forEach(suggestion -> {
+                String workout = suggestion.path("workout").asText();
+                String description = suggestion.path("description").asText();
+                suggestions.add(String.format("%s: %s ",workout,description));
+            });
+        }
+        return suggestions.isEmpty()?
+                Collections.singletonList("No specific suggestions"):
+                suggestions;
+    }
+
+    private List<String> extractImprovements(JsonNode improvementsNode) {
+        List<String> improvements = new ArrayList<>();
+        if(improvementsNode.isArray()){
+            improvementsNode.forEach(improvement -> {
+                String area = improvement.path("area").asText();
+                String detail = improvement.path("recommendation").asText();
+                improvements.add(String.format("%s: %s ",area,detail));
+            });
+        }
+        return improvements.isEmpty()?
+                Collections.singletonList("No specific improvements"):
+                improvements;
+    }
+
+    private void addAnalysisSection(StringBuilder fullAnalysis, JsonNode analysisNode, String key, String prefix) {
+        if(!analysisNode.path(key).isMissingNode()){
+            fullAnalysis.append(prefix)
+                .append(analysisNode.path(key).asText())
+                .append("\n");
+        }
+    }
+}
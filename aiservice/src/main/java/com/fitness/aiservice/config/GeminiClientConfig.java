@@ -0,0 +1,80 @@
+package com.fitness.aiservice.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client used only for Gemini calls, with its own connection pool so that slow model calls
+ * never starve other WebClient users. Pool gauges are published under
+ * {@code reactor.netty.connection.provider.*} with {@code name=gemini}.
+ */
+@Configuration
+public class GeminiClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiConnectionProvider(
+            @Value("${gemini.http.max-connections:200}") int maxConnections,
+            @Value("${gemini.http.pending-acquire-max-count:1000}") int pendingAcquireMaxCount,
+            @Value("${gemini.http.pending-acquire-timeout:45s}") Duration pendingAcquireTimeout,
+            @Value("${gemini.http.max-idle-time:30s}") Duration maxIdleTime,
+            @Value("${gemini.http.max-life-time:5m}") Duration maxLifeTime){
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(maxIdleTime)
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * HTTP/2 is offered through ALPN on TLS endpoints and falls back to HTTP/1.1; plain http
+     * endpoints such as the local stand-in use HTTP/1.1 with keep-alive. The API key goes in the
+     * {@code x-goog-api-key} header so it never shows up in URIs, logs or client metrics tags.
+     * Timeouts are per request: {@code responseTimeout} covers the wait for the model, and the write
+     * timeout handler is added for the request only, so nothing lingers on pooled connections.
+     */
+    @Bean
+    public WebClient geminiWebClient(
+            WebClient.Builder webClientBuilder,
+            ConnectionProvider geminiConnectionProvider,
+            @Value("${GEMINI_API_URL}") String geminiUrl,
+            @Value("${GEMINI_API_KEY}") String geminiKey,
+            @Value("${gemini.http.http2:true}") boolean http2,
+            @Value("${gemini.http.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${gemini.http.write-timeout:10s}") Duration writeTimeout,
+            @Value("${gemini.http.response-timeout:60s}") Duration responseTimeout,
+            @Value("${gemini.http.max-response-size:2MB}") DataSize maxResponseSize){
+        HttpClient httpClient = HttpClient.create(geminiConnectionProvider)
+                .compress(true)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(responseTimeout)
+                .doOnRequest((request, connection) -> connection
+                        .addHandlerLast(new WriteTimeoutHandler(writeTimeout.toMillis(), TimeUnit.MILLISECONDS)));
+        if(http2 && geminiUrl.startsWith("https")){
+            httpClient = httpClient.secure().protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeader("x-goog-api-key", geminiKey)
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) maxResponseSize.toBytes()))
+                .build();
+    }
+}
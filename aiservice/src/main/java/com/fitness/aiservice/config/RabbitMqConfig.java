@@ -1,15 +1,29 @@
 package com.fitness.aiservice.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 
 @Configuration
 public class RabbitMqConfig {
@@ -23,6 +37,9 @@ public class RabbitMqConfig {
     @Value("${rabbitmq.routing.key}")
     private String routingKey;
 
+    @Value("${rabbitmq.recommendation-events.exchange:recommendation.events}")
+    private String recommendationEventsExchange;
+
     @Bean
     public Queue activityQueue(){
         return new Queue(queue,true);
@@ -38,9 +55,155 @@ public class RabbitMqConfig {
        return BindingBuilder.bind(activityQueue).to(activityExchange).with(routingKey);
     }
 
+    /**
+     * Delayed retries without a delayed-message plugin: {@code <queue>.retry.N} has no consumers
+     * and a TTL of {@code initial-delay * multiplier^(N-1)}, after which Rabbit dead-letters the
+     * message back to the activity exchange with the original routing key. Activities that cannot
+     * be processed at all are parked in {@code <queue>.parking-lot} for inspection. The main
+     * queue's arguments are left untouched so existing brokers need no migration.
+     */
+    @Bean
+    public Declarables activityRetryTopology(
+            @Value("${rabbitmq.retry.exchange:fitness.retry}") String retryExchangeName,
+            @Value("${rabbitmq.retry.attempts:3}") int attempts,
+            @Value("${rabbitmq.retry.initial-delay:5s}") Duration initialDelay,
+            @Value("${rabbitmq.retry.multiplier:4}") double multiplier){
+        DirectExchange retryExchange = new DirectExchange(retryExchangeName);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(retryExchange);
+        for(int attempt = 1; attempt <= attempts; attempt++){
+            String name = retryQueueName(queue, attempt);
+            Queue retryQueue = QueueBuilder.durable(name)
+                    .ttl((int) (initialDelay.toMillis() * Math.pow(multiplier, attempt - 1)))
+                    .deadLetterExchange(exchange)
+                    .deadLetterRoutingKey(routingKey)
+                    .build();
+            declarables.add(retryQueue);
+            declarables.add(BindingBuilder.bind(retryQueue).to(retryExchange).with(name));
+        }
+        Queue parkingLot = QueueBuilder.durable(parkingLotQueueName(queue)).build();
+        declarables.add(parkingLot);
+        declarables.add(BindingBuilder.bind(parkingLot).to(retryExchange).with(parkingLot.getName()));
+        return new Declarables(declarables);
+    }
+
+    public static String retryQueueName(String queue, int attempt){
+        return queue + ".retry." + attempt;
+    }
+
+    public static String parkingLotQueueName(String queue){
+        return queue + ".parking-lot";
+    }
+
+    /**
+     * Every aiservice instance binds its own exclusive auto-delete queue, so a stored
+     * recommendation reaches the SSE subscribers of all instances.
+     */
+    @Bean
+    public FanoutExchange recommendationEventsExchange(){
+        return new FanoutExchange(recommendationEventsExchange);
+    }
+
+    @Bean
+    public AnonymousQueue recommendationEventsQueue(){
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding recommendationEventsBinding(AnonymousQueue recommendationEventsQueue, FanoutExchange recommendationEventsExchange){
+        return BindingBuilder.bind(recommendationEventsQueue).to(recommendationEventsExchange);
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter(){
         return new Jackson2JsonMessageConverter();
     }
 
+    /**
+     * Container for the blocking listener, one activity per invocation.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory activityListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${rabbitmq.listener.prefetch:10}") int prefetch,
+            @Value("${rabbitmq.listener.concurrency:1}") int concurrency,
+            @Value("${rabbitmq.listener.max-concurrency:4}") int maxConcurrency){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setPrefetchCount(prefetch);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(maxConcurrency);
+        return factory;
+    }
+
+    /**
+     * Container for {@code ai.pipeline.mode=batch}: each consumer collects up to {@code batch-size}
+     * deliveries, waiting at most {@code receive-timeout} for the batch to fill, and hands them
+     * to the listener as a {@code List<Activity>}. The whole batch is acked once the listener returns.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ai.pipeline.mode", havingValue = "batch")
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${rabbitmq.listener.prefetch:10}") int prefetch,
+            @Value("${rabbitmq.listener.concurrency:1}") int concurrency,
+            @Value("${rabbitmq.listener.max-concurrency:4}") int maxConcurrency,
+            @Value("${rabbitmq.listener.batch-size:20}") int batchSize,
+            @Value("${rabbitmq.listener.receive-timeout:1s}") Duration receiveTimeout){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout.toMillis());
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(maxConcurrency);
+        return factory;
+    }
+
+    /**
+     * Container for the reactive pipeline. Listeners return a {@code Mono}, so acks are manual and
+     * issued on completion; the prefetch therefore caps how many activities each consumer keeps in flight.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ai.pipeline.mode", havingValue = "reactive")
+    public SimpleRabbitListenerContainerFactory reactiveListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${ai.pipeline.reactive.consumers:2}") int consumers,
+            @Value("${ai.pipeline.reactive.in-flight-per-consumer:250}") int inFlightPerConsumer){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(consumers);
+        factory.setPrefetchCount(inFlightPerConsumer);
+        return factory;
+    }
+
+    /**
+     * Container for {@code ai.pipeline.mode=virtual}. The few consumer threads only hand deliveries
+     * to virtual threads, and the listener returns a {@code CompletableFuture}, so acks are manual.
+     * Each consumer prefetches up to {@code max-in-flight}; the listener's semaphore enforces that
+     * cap across all of them.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ai.pipeline.mode", havingValue = "virtual")
+    public SimpleRabbitListenerContainerFactory virtualListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${ai.pipeline.virtual.consumers:2}") int consumers,
+            @Value("${ai.pipeline.virtual.max-in-flight:200}") int maxInFlight){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(consumers);
+        factory.setPrefetchCount(maxInFlight);
+        return factory;
+    }
+
 }
@@ -0,0 +1,77 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.aiservice.model.Recommendation;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Creates the unique {@code activityId} index on {@code recommendations}. Before that index
+ * existed a redelivered activity could get a second recommendation, so collections written by
+ * older versions are deduplicated first, keeping the newest document per activity; otherwise the
+ * index build would fail at startup. Runs before the listener containers start and is a no-op
+ * once the index is in place.
+ */
+@Component
+@Slf4j
+public class RecommendationIndexes {
+
+    static final String ACTIVITY_ID_INDEX = "activityId";
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean deduplicate;
+
+    public RecommendationIndexes(MongoTemplate mongoTemplate,
+                                 @Value("${ai.recommendations.deduplicate-on-startup:true}") boolean deduplicate) {
+        this.mongoTemplate = mongoTemplate;
+        this.deduplicate = deduplicate;
+    }
+
+    @PostConstruct
+    public void ensureIndexes() {
+        boolean present = mongoTemplate.indexOps(Recommendation.class).getIndexInfo().stream()
+                .anyMatch(index -> ACTIVITY_ID_INDEX.equals(index.getName()) && index.isUnique());
+        if(present){
+            return;
+        }
+        if(deduplicate){
+            long removed = removeDuplicates();
+            if(removed > 0){
+                log.warn("Removed {} duplicate recommendations before creating the unique activityId index", removed);
+            }
+        }
+        mongoTemplate.indexOps(Recommendation.class)
+                .ensureIndex(new Index("activityId", Sort.Direction.ASC).unique().named(ACTIVITY_ID_INDEX));
+    }
+
+    long removeDuplicates() {
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.match(where("activityId").ne(null)),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "createdAt", "_id")),
+                Aggregation.group("activityId").push("_id").as("ids").count().as("count"),
+                Aggregation.match(where("count").gt(1)))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        long removed = 0;
+        try(Stream<Document> groups = mongoTemplate.aggregateStream(duplicates, Recommendation.class, Document.class)){
+            for(Document group : (Iterable<Document>) groups::iterator){
+                List<Object> ids = group.getList("ids", Object.class);
+                removed += mongoTemplate.remove(new Query(where("_id").in(ids.subList(1, ids.size()))), Recommendation.class)
+                        .getDeletedCount();
+            }
+        }
+        return removed;
+    }
+}
@@ -1,14 +1,24 @@
 package com.fitness.aiservice.controller;
 
+import com.fitness.aiservice.dto.RecommendationPage;
 import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.service.RecommendationEventHub;
 import com.fitness.aiservice.service.RecommendationService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -16,12 +26,48 @@ import java.util.List;
 @RequestMapping("/api/recommendations")
 public class RecommendationController {
     private final RecommendationService recommendationService;
+    private final RecommendationEventHub recommendationEventHub;
+
+    @Value("${ai.events.heartbeat:15s}")
+    private Duration heartbeatInterval;
 
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Recommendation>> getUserRecommendation(@PathVariable String userId) {
         return ResponseEntity.ok(recommendationService.getUserRecommendation(userId));
     }
 
+    @GetMapping(value = "/user/{userId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Recommendation> streamUserRecommendations(@PathVariable String userId) {
+        return recommendationService.streamUserRecommendations(userId);
+    }
+
+    /**
+     * Pushes the user's new recommendations as they are stored, with a comment heartbeat to keep
+     * idle connections open through the gateway.
+     */
+    @GetMapping(value = "/user/{userId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Recommendation>> subscribeUserRecommendations(@PathVariable String userId) {
+        Flux<ServerSentEvent<Recommendation>> recommendations = recommendationEventHub.subscribe(userId)
+                .map(recommendation -> ServerSentEvent.builder(recommendation)
+                        .id(recommendation.getActivityId())
+                        .event("recommendation")
+                        .build());
+        Flux<ServerSentEvent<Recommendation>> heartbeats = Flux.interval(heartbeatInterval)
+                .map(tick -> ServerSentEvent.<Recommendation>builder().comment("heartbeat").build());
+        return Flux.merge(recommendations, heartbeats);
+    }
+
+    @GetMapping("/user/{userId}/page")
+    public ResponseEntity<RecommendationPage> getUserRecommendationPage(
+            @PathVariable String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String activityType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return ResponseEntity.ok(recommendationService.getUserRecommendationPage(userId, cursor, size, activityType, from, to));
+    }
+
     @GetMapping("/activity/{activityId}")
     public ResponseEntity<Recommendation> getActivityRecommendation(@PathVariable String activityId) {
         return ResponseEntity.ok(recommendationService.getActivityRecommendation(activityId));
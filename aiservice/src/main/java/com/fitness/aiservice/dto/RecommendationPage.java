@@ -0,0 +1,16 @@
+package com.fitness.aiservice.dto;
+
+import com.fitness.aiservice.model.Recommendation;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecommendationPage {
+    private List<Recommendation> items;
+    private String nextCursor;
+}
@@ -0,0 +1,37 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Activity independent part of a Gemini recommendation, stored under the activity fingerprint
+ * so that near-identical activities can reuse it.
+ */
+@Document(collection = "recommendation_cache")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedRecommendation {
+
+    @Id
+    private String fingerprint;
+    private String activityType;
+    private String recommendation;
+    private List<String> improvements;
+    private List<String> suggestions;
+    private List<String> safety;
+    private LocalDateTime createdAt;
+
+    @Indexed(expireAfter = "0s")
+    private Instant expiresAt;
+}
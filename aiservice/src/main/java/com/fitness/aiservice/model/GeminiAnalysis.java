@@ -0,0 +1,44 @@
+package com.fitness.aiservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Analysis JSON returned by Gemini inside {@code candidates[0].content.parts[0].text}.
+ * {@code activityId} is only present in batched responses.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GeminiAnalysis {
+
+    private String activityId;
+    private Analysis analysis;
+    private List<Improvement> improvements;
+    private List<Suggestion> suggestions;
+    private List<String> safety;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Analysis {
+        private String overall;
+        private String pace;
+        private String heartRate;
+        private String caloriesBurned;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Improvement {
+        private String area;
+        private String recommendation;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Suggestion {
+        private String workout;
+        private String description;
+    }
+}
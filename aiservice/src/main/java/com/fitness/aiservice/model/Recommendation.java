@@ -6,12 +6,14 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Document(collection = "recommendations")
+@CompoundIndex(name = "user_created_idx", def = "{'userId': 1, 'createdAt': -1, '_id': -1}")
 @Data
 @Builder
 @NoArgsConstructor
@@ -20,6 +22,7 @@ public class Recommendation {
 
     @Id
     private String id;
+    // unique index created by RecommendationIndexes once legacy duplicates are removed
     private String activityId;
     private String userId;
     private String activityType;
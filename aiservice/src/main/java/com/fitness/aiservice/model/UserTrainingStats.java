@@ -0,0 +1,102 @@
+package com.fitness.aiservice.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running aggregate of a user's activities, updated once per consumed activity. Concurrent
+ * updates are detected through {@code version}. {@code recentActivityIds} keeps the last few
+ * activities counted so that a redelivered message is not counted twice.
+ */
+@Document(collection = "user_training_stats")
+@Data
+@NoArgsConstructor
+public class UserTrainingStats {
+
+    @Id
+    private String userId;
+    @Version
+    private Long version;
+    private Map<String, TypeStats> byType = new LinkedHashMap<>();
+    private List<WeeklyVolume> weeklyVolume = new ArrayList<>();
+    private List<String> recentActivityIds = new ArrayList<>();
+    private LocalDateTime updatedAt;
+
+    public UserTrainingStats(String userId) {
+        this.userId = userId;
+    }
+
+    public UserTrainingStats copy() {
+        UserTrainingStats copy = new UserTrainingStats(userId);
+        copy.version = version;
+        byType.forEach((type, stats) -> copy.byType.put(type, stats.copy()));
+        weeklyVolume.forEach(week -> copy.weeklyVolume.add(week.copy()));
+        copy.recentActivityIds.addAll(recentActivityIds);
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class TypeStats {
+        private long count;
+        private long totalMinutes;
+        private long totalCalories;
+        private Double paceEmaShort;
+        private Double paceEmaLong;
+        private Double heartRateEmaShort;
+        private Double heartRateEmaLong;
+        private Double bestPaceMinPerKm;
+        private Double longestDistanceKm;
+        private Integer longestMinutes;
+        private Integer mostCalories;
+        private LocalDateTime lastActivityAt;
+
+        TypeStats copy() {
+            TypeStats copy = new TypeStats();
+            copy.count = count;
+            copy.totalMinutes = totalMinutes;
+            copy.totalCalories = totalCalories;
+            copy.paceEmaShort = paceEmaShort;
+            copy.paceEmaLong = paceEmaLong;
+            copy.heartRateEmaShort = heartRateEmaShort;
+            copy.heartRateEmaLong = heartRateEmaLong;
+            copy.bestPaceMinPerKm = bestPaceMinPerKm;
+            copy.longestDistanceKm = longestDistanceKm;
+            copy.longestMinutes = longestMinutes;
+            copy.mostCalories = mostCalories;
+            copy.lastActivityAt = lastActivityAt;
+            return copy;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class WeeklyVolume {
+        private String week;
+        private int activities;
+        private long minutes;
+        private long calories;
+
+        public WeeklyVolume(String week) {
+            this.week = week;
+        }
+
+        WeeklyVolume copy() {
+            WeeklyVolume copy = new WeeklyVolume(week);
+            copy.activities = activities;
+            copy.minutes = minutes;
+            copy.calories = calories;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.fitness.aiservice.repository;
+
+import com.fitness.aiservice.model.Recommendation;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveRecommendationRepository extends ReactiveMongoRepository<Recommendation, String> {
+
+    Mono<Boolean> existsByActivityId(String activityId);
+
+    Flux<Recommendation> findByUserIdOrderByCreatedAtDesc(String userId);
+}
@@ -11,4 +11,6 @@ public interface RecommendationRepository extends MongoRepository<Recommendation
     List<Recommendation> findByUserId(String userId);
 
     Recommendation findByActivityId(String activityId);
+
+    boolean existsByActivityId(String activityId);
 }
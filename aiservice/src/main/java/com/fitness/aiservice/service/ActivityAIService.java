@@ -1,82 +1,142 @@
 package com.fitness.aiservice.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.CachedRecommendation;
+import com.fitness.aiservice.model.GeminiAnalysis;
 import com.fitness.aiservice.model.Recommendation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
-import java.lang.reflect.Array;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ActivityAIService {
     private final GeminiService geminiService;
+    private final ActivityFingerprint activityFingerprint;
+    private final RecommendationCache recommendationCache;
+    private final RecommendationBatcher recommendationBatcher;
+    private final GeminiResponseParser responseParser;
+    private final PromptBuilder promptBuilder;
+    private final RecommendationRouter recommendationRouter;
+    private final LocalRecommendationEngine localRecommendationEngine;
+    private final RecommendationMetrics recommendationMetrics;
+    private final UserTrainingStatsService userTrainingStatsService;
 
     public Recommendation generateRecommendation(Activity activity) {
-        String prompt = createPromptForActivity(activity);
-        String aiResponse = geminiService.getAnswers(prompt);
-        log.info("Response from AI: {} " , aiResponse);
-        return processAiResponse(activity, aiResponse);
+        if(recommendationRouter.isLocal(activity)){
+            return generateLocal(activity);
+        }
+        if(recommendationBatcher.isEnabled()){
+            return generateRecommendationAsync(activity).block();
+        }
+        String fingerprint = cacheKey(activity);
+        return recommendationCache.get(fingerprint)
+                .blockOptional()
+                .map(cached -> fromCache(activity, cached))
+                .orElseGet(() -> {
+                    long start = System.nanoTime();
+                    String prompt = promptBuilder.buildPrompt(activity);
+                    String aiResponse = geminiService.getAnswers(prompt);
+                    log.info("Response from AI: {} " , aiResponse);
+                    Recommendation recommendation = processAiResponse(activity, aiResponse, fingerprint);
+                    recommendationRouter.recordGemini(System.nanoTime() - start);
+                    return recommendation;
+                });
     }
 
-    private Recommendation processAiResponse(Activity activity,String aiResponse) {
-        try{
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode rootNode = mapper.readTree(aiResponse);
-            JsonNode textNode = rootNode.path("candidates")
-                    .get(0)
-                    .path("content")
-                    .path("parts")
-                    .get(0)
-                    .path("text");
-            String jsonContent = textNode.asText()
-                    .replaceAll("```json\\n","")
-                    .replaceAll("\\n```","")
-                    .trim();
-            //log.info("Parsed Response from AI: {} " , jsonContent);
+    public Mono<Recommendation> generateRecommendationAsync(Activity activity) {
+        if(recommendationRouter.isLocal(activity)){
+            return Mono.fromSupplier(() -> generateLocal(activity));
+        }
+        String fingerprint = cacheKey(activity);
+        return recommendationCache.get(fingerprint)
+                .map(cached -> fromCache(activity, cached))
+                .switchIfEmpty(Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    Mono<Recommendation> generated = recommendationBatcher.isEnabled()
+                            ? recommendationBatcher.submit(activity)
+                                .map(analysis -> processAnalysis(activity, analysis, fingerprint))
+                                .switchIfEmpty(Mono.defer(() -> generateSingle(activity, fingerprint)))
+                            : generateSingle(activity, fingerprint);
+                    return generated.doOnNext(recommendation -> recommendationRouter.recordGemini(System.nanoTime() - start));
+                }));
+    }
 
-            JsonNode analysisJson = mapper.readTree(jsonContent);
-            JsonNode analysisNode = analysisJson.path("analysis");
-            StringBuilder fullAnalysis = new StringBuilder();
-            addAnalysisSection(fullAnalysis,analysisNode,"overall","Overall:");
-            addAnalysisSection(fullAnalysis,analysisNode,"pace","Pace:");
-            addAnalysisSection(fullAnalysis,analysisNode,"heartRate","Heart Rate:");
-            addAnalysisSection(fullAnalysis,analysisNode,"caloriesBurned","Calories Burned:");
+    /**
+     * Prompts with the user's training history get a personal answer, so the history band goes
+     * into the key: users with similar history share entries, and users without history share
+     * the plain activity fingerprint.
+     */
+    private String cacheKey(Activity activity) {
+        return activityFingerprint.of(activity, userTrainingStatsService.historyBand(activity).orElse(null));
+    }
 
-            List<String> improvements = extractImprovements(analysisJson.path("improvements"));
+    private Recommendation generateLocal(Activity activity) {
+        long start = System.nanoTime();
+        Recommendation recommendation = localRecommendationEngine.recommend(activity);
+        recommendationRouter.recordLocal(System.nanoTime() - start);
+        log.info("Generated local recommendation for activity : {} " , activity.getId());
+        return recommendation;
+    }
 
-            List<String> suggestions = extractSuggestions(analysisJson.path("suggestions"));
+    private Mono<Recommendation> generateSingle(Activity activity, String fingerprint) {
+        return Mono.fromSupplier(() -> promptBuilder.buildPrompt(activity))
+                .flatMap(geminiService::getAnswersAsync)
+                .doOnNext(aiResponse -> log.info("Response from AI: {} " , aiResponse))
+                .map(aiResponse -> processAiResponse(activity, aiResponse, fingerprint));
+    }
 
-            List<String> safety = extractSafetyGuidelines(analysisJson.path("safety"));
+    private Recommendation fromCache(Activity activity, CachedRecommendation cached) {
+        log.info("Reusing cached recommendation for activity : {} " , activity.getId());
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .recommendation(cached.getRecommendation())
+                .improvements(cached.getImprovements())
+                .suggestions(cached.getSuggestions())
+                .safety(cached.getSafety())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
 
-            return Recommendation.builder()
-                    .activityId(activity.getId())
-                    .userId(activity.getUserId())
-                    .activityType(activity.getType())
-                    .recommendation(fullAnalysis.toString().trim())
-                    .improvements(improvements)
-                    .suggestions(suggestions)
-                    .safety(safety)
-                    .createdAt(LocalDateTime.now())
-                    .build();
+    /**
+     * An unparseable response is thrown rather than replaced by the default recommendation, so
+     * {@link ActivityRetryHandler} can retry it later.
+     */
+    private Recommendation processAiResponse(Activity activity,String aiResponse,String fingerprint) {
+        GeminiAnalysis analysis = recommendationMetrics.timeParse(aiResponse, () -> {
+            try{
+                return responseParser.parseAnalysis(aiResponse);
+            }
+            catch(IOException e){
+                throw new UncheckedIOException("Unable to parse AI response for activity " + activity.getId(), e);
+            }
+        });
+        return processAnalysis(activity, analysis, fingerprint);
+    }
 
-        }
-        catch(Exception e){
-            e.printStackTrace();
-            return createDefaultRecommendation(activity);
-        }
+    private Recommendation processAnalysis(Activity activity, GeminiAnalysis analysis, String fingerprint) {
+        Recommendation recommendation = responseParser.toRecommendation(analysis)
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .createdAt(LocalDateTime.now())
+                .build();
+        recommendationCache.put(fingerprint, recommendation);
+        return recommendation;
     }
 
-    private Recommendation createDefaultRecommendation(Activity activity) {
+    public Recommendation createDefaultRecommendation(Activity activity) {
+        recommendationMetrics.recordDefault();
         return Recommendation.builder()
                 .activityId(activity.getId())
                 .userId(activity.getUserId())
@@ -92,96 +152,4 @@ public class ActivityAIService {
                 .createdAt(LocalDateTime.now())
                 .build();
     }
-
-    private List<String> extractSafetyGuidelines(JsonNode safetyNode) {
-        List<String> safety = new ArrayList<>();
-        if(safetyNode.isArray()){
-            safetyNode.forEach(item -> safety.add(item.asText()));
-        }
-        return safety.isEmpty()?
-                Collections.singletonList("Follow General Safety Guidelines"):
-                safety;
-    }
-
-    private List<String> extractSuggestions(JsonNode suggestionsNode) {
-        List<String> suggestions = new ArrayList<>();
-        if(suggestionsNode.isArray()){
-            suggestionsNode.forEach(suggestion -> {
-                String workout = suggestion.path("workout").asText();
-                String description = suggestion.path("description").asText();
-                suggestions.add(String.format("%s: %s ",workout,description));
-            });
-        }
-        return suggestions.isEmpty()?
-                Collections.singletonList("No specific suggestions"):
-                suggestions;
-    }
-
-    private List<String> extractImprovements(JsonNode improvementsNode) {
-        List<String> improvements = new ArrayList<>();
-        if(improvementsNode.isArray()){
-            improvementsNode.forEach(improvement -> {
-                String area = improvement.path("area").asText();
-                String detail = improvement.path("recommendation").asText();
-                improvements.add(String.format("%s: %s ",area,detail));
-            });
-        }
-        return improvements.isEmpty()?
-                Collections.singletonList("No specific improvements"):
-                improvements;
-    }
-
-    private void addAnalysisSection(StringBuilder fullAnalysis, JsonNode analysisNode, String key, String prefix) {
-        if(!analysisNode.path(key).isMissingNode()){
-            fullAnalysis.append(prefix)
-                .append(analysisNode.path(key).asText())
-                .append("\n");
-        }
-    }
-
-    private String createPromptForActivity(Activity activity) {
-        return String.format(""" 
-                  Analyze this fitness activity and provide detailed recommendations in the following format
-                  {
-                      "analysis" : {
-                          "overall": "Overall analysis here",
-                          "pace": "Pace analysis here",
-                          "heartRate": "Heart rate analysis here",
-                          "CaloriesBurned": "Calories Burned here"
-                      },
-                      "improvements": [
-                          {
-                              "area": "Area name",
-                              "recommendation": "Detailed Recommendation"
-                          }
-                      ],
-                      "suggestions" : [
-                          {
-                              "workout": "Workout name",
-                              "description": "Detailed workout description"
-                          }
-                      ],
-                      "safety": [
-                          "Safety point 1",
-                          "Safety point 2"
-                      ]
-                  }
-                
-                  Analyze this activity:
-                  Activity Type: %s
-                  Duration: %d minutes
-                  calories Burned: %d
-                  Additional Metrics: %s
-                
-                  provide detailed analysis focusing on performance, improvements, next workout suggestions, and safety guidelines
-                  Ensure the response follows the EXACT JSON format shown above.
-                """,
-                activity.getType(),
-                activity.getDuration(),
-                activity.getCaloriesBurned(),
-                activity.getAdditionalMetrics()
-        );
-    }
-
-
 }
@@ -0,0 +1,127 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds a canonical key for an activity: type, bucketed duration and calories, and the
+ * additional metrics with sorted keys and numbers rounded to a few significant digits.
+ * Activities with the same fingerprint get the same recommendation. When the prompt carries the
+ * user's history, a coarse band of that history is part of the key as well.
+ */
+@Component
+public class ActivityFingerprint {
+
+    @Value("${ai.cache.duration-bucket-minutes:5}")
+    private int durationBucketMinutes;
+
+    @Value("${ai.cache.calories-bucket:50}")
+    private int caloriesBucket;
+
+    @Value("${ai.cache.metric-significant-digits:2}")
+    private int metricSignificantDigits;
+
+    public String of(Activity activity) {
+        return of(activity, null);
+    }
+
+    public String of(Activity activity, String historyBand) {
+        StringBuilder canonical = new StringBuilder(128)
+                .append(normalizeText(activity.getType())).append('|')
+                .append(bucket(activity.getDuration(), durationBucketMinutes)).append('|')
+                .append(bucket(activity.getCaloriesBurned(), caloriesBucket)).append('|');
+        appendValue(canonical, activity.getAdditionalMetrics());
+        if(historyBand != null){
+            canonical.append("|history=").append(historyBand);
+        }
+        return sha256(canonical.toString());
+    }
+
+    private String bucket(Integer value, int width) {
+        if(value == null){
+            return "-";
+        }
+        return Long.toString(Math.round(value / (double) Math.max(width, 1)));
+    }
+
+    private void appendValue(StringBuilder canonical, Object value) {
+        if(value == null){
+            canonical.append('-');
+        }
+        else if(value instanceof Map<?, ?> map){
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((key, entry) -> sorted.put(normalizeText(String.valueOf(key)), entry));
+            canonical.append('{');
+            sorted.forEach((key, entry) -> {
+                canonical.append(key).append('=');
+                appendValue(canonical, entry);
+                canonical.append(';');
+            });
+            canonical.append('}');
+        }
+        else if(value instanceof Collection<?> collection){
+            appendCollection(canonical, collection);
+        }
+        else if(value instanceof Number number){
+            canonical.append(round(number));
+        }
+        else {
+            canonical.append(normalizeText(value.toString()));
+        }
+    }
+
+    /**
+     * Numeric series (GPS, heart rate samples) are reduced to their size and mean; the raw samples
+     * would make every activity unique.
+     */
+    private void appendCollection(StringBuilder canonical, Collection<?> collection) {
+        if(!collection.isEmpty() && collection.stream().allMatch(Number.class::isInstance)){
+            double mean = collection.stream().mapToDouble(n -> ((Number) n).doubleValue()).average().orElse(0);
+            canonical.append("[n=").append(collection.size()).append(",avg=").append(round(mean)).append(']');
+            return;
+        }
+        canonical.append('[');
+        collection.forEach(item -> {
+            appendValue(canonical, item);
+            canonical.append(',');
+        });
+        canonical.append(']');
+    }
+
+    private String round(Number number) {
+        double value = number.doubleValue();
+        if(Double.isNaN(value) || Double.isInfinite(value)){
+            return "-";
+        }
+        return new BigDecimal(value)
+                .round(new MathContext(metricSignificantDigits))
+                .stripTrailingZeros()
+                .toPlainString();
+    }
+
+    private String normalizeText(String text) {
+        return text == null ? "-" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private String sha256(String canonical) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
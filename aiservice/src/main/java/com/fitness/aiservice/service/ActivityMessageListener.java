@@ -1,32 +1,26 @@
 package com.fitness.aiservice.service;
 
 import com.fitness.aiservice.model.Activity;
-import com.fitness.aiservice.model.Recommendation;
-import com.fitness.aiservice.repository.RecommendationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "ai.pipeline.mode", havingValue = "blocking", matchIfMissing = true)
 public class ActivityMessageListener {
 
-    private final ActivityAIService aiService;
+    private final RecommendationPipeline recommendationPipeline;
 
-    private final RecommendationRepository recommendationRepository;
-
-    @Value("${rabbitmq.queue.name}")
-    private String queue;
-
-    @RabbitListener(queues = "activity.queue" )
-    public void processActivity(Activity activity) {
+    @RabbitListener(queues = "${rabbitmq.queue.name}", containerFactory = "activityListenerContainerFactory")
+    public void processActivity(Activity activity,
+                                @Header(name = ActivityRetryHandler.ATTEMPT_HEADER, required = false) Integer attempt) {
         log.info("Received activity for processing : {} " , activity.getId());
-//        log.info("Generate Recommendation : {} " , aiService.generateRecommendation(activity));
-        Recommendation recommendation = aiService.generateRecommendation(activity);
-        recommendationRepository.save(recommendation);
+        recommendationPipeline.processBlocking(activity, attempt == null ? 0 : attempt);
 
     }
 }
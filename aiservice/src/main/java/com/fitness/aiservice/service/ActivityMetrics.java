@@ -0,0 +1,79 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Reads the few additional metrics the services understand. Clients send them under different
+ * keys and as either a single value or a series, so every lookup accepts a list of aliases and
+ * averages series.
+ */
+final class ActivityMetrics {
+
+    private static final String[] HEART_RATE = {"averageHeartRate", "avgHeartRate", "heartRate", "heart_rate", "hr"};
+    private static final String[] DISTANCE_KM = {"distance", "distanceKm", "distance_km"};
+    private static final String[] STEPS = {"steps", "stepCount"};
+
+    private ActivityMetrics() {
+    }
+
+    static OptionalDouble heartRate(Activity activity) {
+        return first(activity.getAdditionalMetrics(), HEART_RATE);
+    }
+
+    static OptionalDouble distanceKm(Activity activity) {
+        return first(activity.getAdditionalMetrics(), DISTANCE_KM);
+    }
+
+    static OptionalDouble steps(Activity activity) {
+        return first(activity.getAdditionalMetrics(), STEPS);
+    }
+
+    /**
+     * Pace in minutes per kilometre, when both duration and distance are known.
+     */
+    static OptionalDouble paceMinPerKm(Activity activity) {
+        OptionalDouble distance = distanceKm(activity);
+        if(activity.getDuration() == null || activity.getDuration() <= 0 || distance.isEmpty() || distance.getAsDouble() <= 0){
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(activity.getDuration() / distance.getAsDouble());
+    }
+
+    private static OptionalDouble first(Map<String, Object> metrics, String... keys) {
+        if(metrics == null){
+            return OptionalDouble.empty();
+        }
+        for(String key : keys){
+            OptionalDouble value = toDouble(metrics.get(key));
+            if(value.isPresent()){
+                return value;
+            }
+        }
+        return OptionalDouble.empty();
+    }
+
+    private static OptionalDouble toDouble(Object value) {
+        if(value instanceof Number number){
+            return OptionalDouble.of(number.doubleValue());
+        }
+        if(value instanceof String text){
+            try {
+                return OptionalDouble.of(Double.parseDouble(text.trim()));
+            }
+            catch (NumberFormatException e) {
+                return OptionalDouble.empty();
+            }
+        }
+        if(value instanceof Collection<?> series){
+            return series.stream()
+                    .filter(Number.class::isInstance)
+                    .mapToDouble(n -> ((Number) n).doubleValue())
+                    .average();
+        }
+        return OptionalDouble.empty();
+    }
+}
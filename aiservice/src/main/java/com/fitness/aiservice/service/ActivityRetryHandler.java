@@ -0,0 +1,119 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.RabbitMqConfig;
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Decides what happens to an activity whose processing failed. Transient failures (Gemini
+ * throttling or outages, unparseable model output, Mongo being unavailable) are republished to
+ * the next retry queue with an incremented {@value #ATTEMPT_HEADER} header, so the hot consumers
+ * move on and the activity comes back after the queue's TTL. Once all retry queues are used up
+ * the default recommendation is stored. Anything else goes to the parking lot untouched.
+ */
+@Service
+@Slf4j
+public class ActivityRetryHandler {
+
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ActivityAIService aiService;
+    private final RecommendationWriter recommendationWriter;
+    private final String queue;
+    private final String retryExchange;
+    private final int attempts;
+
+    private final Counter retried;
+    private final Counter exhausted;
+    private final Counter parked;
+
+    public ActivityRetryHandler(RabbitTemplate rabbitTemplate,
+                                ActivityAIService aiService,
+                                RecommendationWriter recommendationWriter,
+                                MeterRegistry meterRegistry,
+                                @Value("${rabbitmq.queue.name}") String queue,
+                                @Value("${rabbitmq.retry.exchange:fitness.retry}") String retryExchange,
+                                @Value("${rabbitmq.retry.attempts:3}") int attempts) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.aiService = aiService;
+        this.recommendationWriter = recommendationWriter;
+        this.queue = queue;
+        this.retryExchange = retryExchange;
+        this.attempts = attempts;
+        this.retried = outcome(meterRegistry, "retried");
+        this.exhausted = outcome(meterRegistry, "exhausted");
+        this.parked = outcome(meterRegistry, "parked");
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("ai.activity.failures")
+                .description("Failed activities by what was done with them")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param attempt number of retries already made, {@code 0} for a first delivery
+     */
+    public Mono<Void> handleFailure(Activity activity, int attempt, Throwable error) {
+        if(!isTransient(error)){
+            return Mono.fromRunnable(() -> park(activity, attempt, error))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then();
+        }
+        if(attempt < attempts){
+            return Mono.fromRunnable(() -> retry(activity, attempt + 1, error))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then();
+        }
+        log.error("Giving up on activity {} after {} retries, storing default recommendation : {}",
+                activity.getId(), attempt, error.getMessage());
+        exhausted.increment();
+        return recommendationWriter.write(aiService.createDefaultRecommendation(activity));
+    }
+
+    private void retry(Activity activity, int attempt, Throwable error) {
+        log.warn("Retrying activity {} (attempt {} of {}) : {}", activity.getId(), attempt, attempts, error.getMessage());
+        rabbitTemplate.convertAndSend(retryExchange, RabbitMqConfig.retryQueueName(queue, attempt), activity, message -> {
+            message.getMessageProperties().setHeader(ATTEMPT_HEADER, attempt);
+            return message;
+        });
+        retried.increment();
+    }
+
+    private void park(Activity activity, int attempt, Throwable error) {
+        log.error("Parking activity {} after non-retryable failure", activity.getId(), error);
+        rabbitTemplate.convertAndSend(retryExchange, RabbitMqConfig.parkingLotQueueName(queue), activity, message -> {
+            message.getMessageProperties().setHeader(ATTEMPT_HEADER, attempt);
+            message.getMessageProperties().setHeader("x-exception-type", error.getClass().getName());
+            message.getMessageProperties().setHeader("x-exception-message", String.valueOf(error.getMessage()));
+            return message;
+        });
+        parked.increment();
+    }
+
+    static boolean isTransient(Throwable error) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause()){
+            if(GeminiRateLimiter.isOverloadSignal(cause)
+                    || cause instanceof GeminiRateLimitException
+                    || cause instanceof UncheckedIOException
+                    || cause instanceof TransientDataAccessException
+                    || cause instanceof DataAccessResourceFailureException){
+                return true;
+            }
+        }
+        return false;
+    }
+}
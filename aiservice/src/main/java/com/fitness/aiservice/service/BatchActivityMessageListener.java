@@ -0,0 +1,37 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Batch consumer for the activity queue. Activities of one delivery batch are processed
+ * concurrently and the batch is acked when all of them are stored or handed to the retry chain.
+ * Only an error in the retry handoff itself requeues the batch.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "ai.pipeline.mode", havingValue = "batch")
+public class BatchActivityMessageListener {
+
+    private final RecommendationPipeline recommendationPipeline;
+
+    @RabbitListener(queues = "${rabbitmq.queue.name}", containerFactory = "batchListenerContainerFactory")
+    public void processActivities(List<Message<Activity>> messages) {
+        log.info("Received batch of {} activities for processing", messages.size());
+        Flux.fromIterable(messages)
+                .flatMap(message -> {
+                    Integer attempt = message.getHeaders().get(ActivityRetryHandler.ATTEMPT_HEADER, Integer.class);
+                    return recommendationPipeline.process(message.getPayload(), attempt == null ? 0 : attempt);
+                })
+                .blockLast();
+    }
+}
@@ -0,0 +1,196 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Hedged Gemini calls. When an attempt has not answered after the {@code gemini.hedging.percentile}
+ * of recent latencies, one duplicate is started; the first value wins and the other attempt is
+ * cancelled. If an attempt fails while the other is still running, the other one is awaited.
+ * <p>
+ * Hedges are paid for from a budget: every call adds {@code gemini.hedging.budget} credits (0.05
+ * allows 5% extra requests) up to {@code max-credits}, and each hedge spends one. During a
+ * brownout, when most calls are slow, the credits run out and calls go unhedged instead of
+ * doubling the load.
+ * <p>
+ * The call is handed a {@code started} callback that it runs once it actually goes out, i.e. after
+ * the rate limiter granted a permit. Latency samples and the hedge delay are measured from there,
+ * so time spent queueing behind the limiter neither inflates the percentile nor triggers hedges.
+ */
+@Component
+@Slf4j
+public class GeminiHedgingPolicy {
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final int minSamples;
+    private final double budget;
+    private final double maxCredits;
+
+    private final long[] latencies;
+    private int samples;
+    private int next;
+    private long hedgeDelayNanos = -1;
+    private int samplesSinceRecompute;
+    private double credits;
+
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter hedgesDenied;
+
+    public GeminiHedgingPolicy(MeterRegistry meterRegistry,
+                               @Value("${gemini.hedging.enabled:false}") boolean enabled,
+                               @Value("${gemini.hedging.percentile:0.95}") double percentile,
+                               @Value("${gemini.hedging.min-delay:500ms}") Duration minDelay,
+                               @Value("${gemini.hedging.window:1000}") int window,
+                               @Value("${gemini.hedging.min-samples:50}") int minSamples,
+                               @Value("${gemini.hedging.budget:0.05}") double budget,
+                               @Value("${gemini.hedging.max-credits:10}") double maxCredits) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.minSamples = minSamples;
+        this.budget = budget;
+        this.maxCredits = maxCredits;
+        this.latencies = new long[window];
+        this.hedgesSent = hedges(meterRegistry, "sent");
+        this.hedgesWon = hedges(meterRegistry, "won");
+        this.hedgesDenied = hedges(meterRegistry, "denied");
+        Gauge.builder("gemini.hedging.delay", this, policy -> policy.currentDelayNanos() / 1e6)
+                .description("Current delay before a Gemini call is hedged, negative while warming up")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    private static Counter hedges(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gemini.hedging.hedges")
+                .description("Duplicate Gemini requests sent, won by the duplicate, or denied by the budget")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(Function<Runnable, Mono<T>> call) {
+        if(!enabled){
+            return Mono.defer(() -> call.apply(() -> {}));
+        }
+        return Mono.create(sink -> {
+            long delayNanos = onCall();
+            Disposable.Composite attempts = Disposables.composite();
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicInteger running = new AtomicInteger(1);
+            sink.onDispose(attempts);
+
+            HedgeCallback<T> callback = (result, error, hedge) -> {
+                if(error == null){
+                    if(done.compareAndSet(false, true)){
+                        if(hedge){
+                            hedgesWon.increment();
+                        }
+                        attempts.dispose();
+                        sink.success(result.orElse(null));
+                    }
+                }
+                else if(running.decrementAndGet() == 0 && done.compareAndSet(false, true)){
+                    attempts.dispose();
+                    sink.error(error);
+                }
+            };
+            Runnable scheduleHedge = () -> {
+                if(delayNanos < 0){
+                    return;
+                }
+                attempts.add(Mono.delay(Duration.ofNanos(delayNanos)).subscribe(tick -> {
+                    if(done.get()){
+                        return;
+                    }
+                    if(!tryAcquireHedge()){
+                        hedgesDenied.increment();
+                        return;
+                    }
+                    running.incrementAndGet();
+                    hedgesSent.increment();
+                    log.debug("Hedging Gemini call after {} ms", delayNanos / 1_000_000);
+                    attempts.add(attempt(call, callback, true, () -> {}));
+                }));
+            };
+            attempts.add(attempt(call, callback, false, scheduleHedge));
+        });
+    }
+
+    private interface HedgeCallback<T> {
+        void onResult(Optional<T> result, Throwable error, boolean hedge);
+    }
+
+    /**
+     * Runs one attempt; {@code onStarted} fires when the call reports it went out.
+     */
+    private <T> Disposable attempt(Function<Runnable, Mono<T>> call, HedgeCallback<T> callback, boolean hedge, Runnable onStarted) {
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicLong startedAt = new AtomicLong();
+        Runnable start = () -> {
+            if(started.compareAndSet(false, true)){
+                startedAt.set(System.nanoTime());
+                onStarted.run();
+            }
+        };
+        return Mono.defer(() -> call.apply(start))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .subscribe(result -> {
+                    if(started.get()){
+                        record(System.nanoTime() - startedAt.get());
+                    }
+                    callback.onResult(result, null, hedge);
+                }, error -> callback.onResult(Optional.empty(), error, hedge));
+    }
+
+    /**
+     * Adds this call's share of the hedge budget and returns the hedge delay, or -1 until enough
+     * latencies have been seen.
+     */
+    private synchronized long onCall() {
+        credits = Math.min(maxCredits, credits + budget);
+        return hedgeDelayNanos;
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        if(credits < 1){
+            return false;
+        }
+        credits -= 1;
+        return true;
+    }
+
+    private synchronized void record(long latencyNanos) {
+        latencies[next] = latencyNanos;
+        next = (next + 1) % latencies.length;
+        samples = Math.min(samples + 1, latencies.length);
+        if(samples >= minSamples && (hedgeDelayNanos < 0 || ++samplesSinceRecompute >= Math.max(1, latencies.length / 20))){
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            int index = Math.clamp((int) Math.ceil(percentile * samples) - 1, 0, samples - 1);
+            hedgeDelayNanos = Math.max(minDelayNanos, sorted[index]);
+            samplesSinceRecompute = 0;
+        }
+    }
+
+    private synchronized long currentDelayNanos() {
+        return hedgeDelayNanos;
+    }
+}
@@ -0,0 +1,8 @@
+package com.fitness.aiservice.service;
+
+public class GeminiRateLimitException extends RuntimeException {
+
+    public GeminiRateLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,301 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Client side throttle for Gemini calls. Each call needs a permit from an AIMD concurrency limit
+ * and enough budget in the requests-per-minute and tokens-per-minute buckets. Waiting calls are
+ * queued in FIFO order and rejected when the queue is full or the wait gets too long.
+ * The limit grows by one while calls succeed within the latency threshold and the current limit
+ * is actually in use, and is multiplied by the backoff ratio on 429, 5xx and connection failures.
+ */
+@Component
+@Slf4j
+public class GeminiRateLimiter {
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final long backoffCooldownNanos;
+    private final int maxQueueSize;
+    private final Duration maxQueueWait;
+    private final int expectedOutputTokens;
+
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long lastBackoff;
+    private boolean drainScheduled;
+
+    private final Timer queueWait;
+    private final Counter queueFullRejections;
+    private final Counter queueTimeoutRejections;
+    private final Counter backoffs;
+
+    /**
+     * A call waiting for or holding a permit. Guarded by the limiter; {@code released} makes sure
+     * the permit is given back exactly once, whichever of grant, timeout or cancel comes last.
+     */
+    private static final class Waiter {
+        private final int tokens;
+        private MonoSink<Void> sink;
+        private boolean granted;
+        private boolean released;
+
+        private Waiter(int tokens) {
+            this.tokens = tokens;
+        }
+    }
+
+    public GeminiRateLimiter(MeterRegistry meterRegistry,
+                             @Value("${gemini.rate-limit.enabled:true}") boolean enabled,
+                             @Value("${gemini.rate-limit.requests-per-minute:1000}") long requestsPerMinute,
+                             @Value("${gemini.rate-limit.tokens-per-minute:1000000}") long tokensPerMinute,
+                             @Value("${gemini.rate-limit.burst:10s}") Duration burst,
+                             @Value("${gemini.rate-limit.expected-output-tokens:800}") int expectedOutputTokens,
+                             @Value("${gemini.rate-limit.max-queue-size:1000}") int maxQueueSize,
+                             @Value("${gemini.rate-limit.max-queue-wait:30s}") Duration maxQueueWait,
+                             @Value("${gemini.concurrency.initial-limit:20}") int initialLimit,
+                             @Value("${gemini.concurrency.min-limit:1}") int minLimit,
+                             @Value("${gemini.concurrency.max-limit:200}") int maxLimit,
+                             @Value("${gemini.concurrency.backoff-ratio:0.5}") double backoffRatio,
+                             @Value("${gemini.concurrency.latency-threshold:30s}") Duration latencyThreshold,
+                             @Value("${gemini.concurrency.backoff-cooldown:1s}") Duration backoffCooldown) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffCooldownNanos = backoffCooldown.toNanos();
+        this.maxQueueSize = maxQueueSize;
+        this.maxQueueWait = maxQueueWait;
+        this.expectedOutputTokens = expectedOutputTokens;
+        this.requestBucket = new TokenBucket(requestsPerMinute, burst);
+        this.tokenBucket = new TokenBucket(tokensPerMinute, burst);
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+        this.lastBackoff = System.nanoTime() - backoffCooldownNanos;
+
+        Gauge.builder("gemini.concurrency.limit", this, limiter -> limiter.currentLimit())
+                .description("Current adaptive concurrency limit for Gemini calls")
+                .register(meterRegistry);
+        Gauge.builder("gemini.concurrency.in-flight", this, limiter -> limiter.currentInFlight())
+                .description("Gemini calls currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("gemini.rate-limit.queue.size", this, limiter -> limiter.currentQueueSize())
+                .description("Gemini calls waiting for a permit")
+                .register(meterRegistry);
+        Gauge.builder("gemini.rate-limit.requests-per-minute", () -> requestsPerMinute)
+                .register(meterRegistry);
+        Gauge.builder("gemini.rate-limit.tokens-per-minute", () -> tokensPerMinute)
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("gemini.rate-limit.queue.wait")
+                .description("Time Gemini calls waited for a permit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueFullRejections = rejections(meterRegistry, "queue-full");
+        this.queueTimeoutRejections = rejections(meterRegistry, "queue-timeout");
+        this.backoffs = Counter.builder("gemini.concurrency.backoffs")
+                .description("Times the concurrency limit was reduced after a throttled or failed call")
+                .register(meterRegistry);
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("gemini.rate-limit.rejections")
+                .description("Gemini calls rejected by the client side limiter")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(String prompt, Supplier<Mono<T>> call) {
+        if(!enabled){
+            return Mono.defer(call);
+        }
+        int tokens = prompt.length() / 4 + expectedOutputTokens;
+        return Mono.defer(() -> {
+            long enqueuedAt = System.nanoTime();
+            Waiter waiter = new Waiter(tokens);
+            return acquire(waiter)
+                    .timeout(maxQueueWait)
+                    .onErrorMap(TimeoutException.class, e -> {
+                        queueTimeoutRejections.increment();
+                        return new GeminiRateLimitException("Timed out waiting for a Gemini permit");
+                    })
+                    .then(Mono.defer(() -> {
+                        long startedAt = System.nanoTime();
+                        queueWait.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+                        return call.get()
+                                .doOnSuccess(result -> onSuccess(System.nanoTime() - startedAt))
+                                .doOnError(this::onError);
+                    }))
+                    // covers completion, errors, queue timeouts and cancellation, including a
+                    // timeout or cancel landing just after the permit was granted
+                    .doFinally(signal -> release(waiter));
+        });
+    }
+
+    private Mono<Void> acquire(Waiter waiter) {
+        return Mono.create(sink -> {
+            synchronized (this) {
+                if(waiter.released){
+                    return;
+                }
+                if(waiters.size() >= maxQueueSize){
+                    queueFullRejections.increment();
+                    sink.error(new GeminiRateLimitException("Gemini request queue is full"));
+                    return;
+                }
+                waiter.sink = sink;
+                waiters.addLast(waiter);
+            }
+            drain();
+        });
+    }
+
+    private void drain() {
+        List<MonoSink<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            while(!waiters.isEmpty() && inFlight < (int) limit){
+                Waiter next = waiters.peekFirst();
+                long waitNanos = Math.max(requestBucket.nanosUntil(1), tokenBucket.nanosUntil(next.tokens));
+                if(waitNanos > 0){
+                    if(!drainScheduled){
+                        drainScheduled = true;
+                        Schedulers.parallel().schedule(() -> {
+                            synchronized (this) {
+                                drainScheduled = false;
+                            }
+                            drain();
+                        }, waitNanos, TimeUnit.NANOSECONDS);
+                    }
+                    break;
+                }
+                requestBucket.take(1);
+                tokenBucket.take(next.tokens);
+                waiters.pollFirst();
+                next.granted = true;
+                inFlight++;
+                granted.add(next.sink);
+            }
+        }
+        granted.forEach(MonoSink::success);
+    }
+
+    private void release(Waiter waiter) {
+        synchronized (this) {
+            if(waiter.released){
+                return;
+            }
+            waiter.released = true;
+            if(waiter.granted){
+                inFlight--;
+            }
+            else {
+                waiters.remove(waiter);
+            }
+        }
+        drain();
+    }
+
+    private synchronized void onSuccess(long latencyNanos) {
+        if(latencyNanos <= latencyThresholdNanos && inFlight * 2 >= limit){
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    private void onError(Throwable error) {
+        if(!isOverloadSignal(error)){
+            return;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if(now - lastBackoff < backoffCooldownNanos){
+                return;
+            }
+            lastBackoff = now;
+            limit = Math.max(minLimit, limit * backoffRatio);
+            log.warn("Gemini overloaded ({}), concurrency limit reduced to {}", error.getMessage(), (int) limit);
+        }
+        backoffs.increment();
+    }
+
+    static boolean isOverloadSignal(Throwable error) {
+        if(error instanceof WebClientResponseException responseException){
+            return responseException.getStatusCode().value() == 429 || responseException.getStatusCode().is5xxServerError();
+        }
+        return error instanceof WebClientRequestException || error instanceof TimeoutException;
+    }
+
+    private synchronized double currentLimit() {
+        return limit;
+    }
+
+    private synchronized double currentInFlight() {
+        return inFlight;
+    }
+
+    private synchronized double currentQueueSize() {
+        return waiters.size();
+    }
+
+    /**
+     * Refills continuously at the per-minute rate and holds at most {@code burst} worth of budget,
+     * so a full minute's quota can never be spent in one spike. Not thread safe, guarded by the limiter.
+     */
+    private static final class TokenBucket {
+
+        private final boolean unlimited;
+        private final double capacity;
+        private final double refillPerNano;
+        private double available;
+        private long lastRefill;
+
+        private TokenBucket(long perMinute, Duration burst) {
+            this.unlimited = perMinute <= 0;
+            this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.capacity = Math.max(1, refillPerNano * burst.toNanos());
+            this.available = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private long nanosUntil(double amount) {
+            if(unlimited){
+                return 0;
+            }
+            long now = System.nanoTime();
+            available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+            double needed = Math.min(amount, capacity);
+            return available >= needed ? 0 : (long) Math.ceil((needed - available) / refillPerNano);
+        }
+
+        private void take(double amount) {
+            if(!unlimited){
+                available -= Math.min(amount, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fitness.aiservice.model.GeminiAnalysis;
+import com.fitness.aiservice.model.Recommendation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extracts the analysis from a Gemini {@code generateContent} response. The envelope is streamed
+ * with a shared {@link ObjectReader} straight to {@code candidates[0].content.parts[0].text},
+ * skipping safety ratings and usage metadata, and the markdown code fence is stripped by index
+ * arithmetic instead of regexes.
+ */
+@Component
+public class GeminiResponseParser {
+
+    private static final String CODE_FENCE = "```";
+
+    private final ObjectReader reader = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build()
+            .reader();
+
+    private final ObjectReader analysisReader = reader.forType(GeminiAnalysis.class);
+
+    public GeminiAnalysis parseAnalysis(String aiResponse) throws IOException {
+        return analysisReader.readValue(extractText(aiResponse));
+    }
+
+    /**
+     * Reads a batched response: a JSON array of analyses, or an object whose first array field holds them.
+     */
+    public List<GeminiAnalysis> parseBatch(String aiResponse) throws IOException {
+        List<GeminiAnalysis> analyses = new ArrayList<>();
+        try (JsonParser parser = reader.createParser(extractText(aiResponse))) {
+            JsonToken token = parser.nextToken();
+            if(token == JsonToken.START_OBJECT){
+                while(parser.nextToken() == JsonToken.FIELD_NAME){
+                    if(parser.nextToken() == JsonToken.START_ARRAY){
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+            }
+            if(parser.currentToken() != JsonToken.START_ARRAY){
+                return analyses;
+            }
+            while(parser.nextToken() == JsonToken.START_OBJECT){
+                analyses.add(analysisReader.readValue(parser));
+            }
+        }
+        return analyses;
+    }
+
+    public String extractText(String aiResponse) throws IOException {
+        try (JsonParser parser = reader.createParser(aiResponse)) {
+            if(parser.nextToken() == JsonToken.START_OBJECT
+                    && moveToField(parser, "candidates") && parser.nextToken() == JsonToken.START_ARRAY
+                    && parser.nextToken() == JsonToken.START_OBJECT
+                    && moveToField(parser, "content") && parser.nextToken() == JsonToken.START_OBJECT
+                    && moveToField(parser, "parts") && parser.nextToken() == JsonToken.START_ARRAY
+                    && parser.nextToken() == JsonToken.START_OBJECT
+                    && moveToField(parser, "text") && parser.nextToken() == JsonToken.VALUE_STRING){
+                return stripCodeFence(parser.getText());
+            }
+        }
+        throw new IOException("AI response has no candidates[0].content.parts[0].text");
+    }
+
+    /**
+     * Builder pre-filled with the formatted analysis, improvements, suggestions and safety guidelines;
+     * callers add the activity specific fields.
+     */
+    public Recommendation.RecommendationBuilder toRecommendation(GeminiAnalysis result) {
+        StringBuilder fullAnalysis = new StringBuilder(512);
+        GeminiAnalysis.Analysis analysis = result.getAnalysis();
+        if(analysis != null){
+            addAnalysisSection(fullAnalysis, "Overall:", analysis.getOverall());
+            addAnalysisSection(fullAnalysis, "Pace:", analysis.getPace());
+            addAnalysisSection(fullAnalysis, "Heart Rate:", analysis.getHeartRate());
+            addAnalysisSection(fullAnalysis, "Calories Burned:", analysis.getCaloriesBurned());
+        }
+
+        List<String> improvements = new ArrayList<>();
+        if(result.getImprovements() != null){
+            result.getImprovements().forEach(improvement ->
+                    improvements.add(format(improvement.getArea(), improvement.getRecommendation())));
+        }
+
+        List<String> suggestions = new ArrayList<>();
+        if(result.getSuggestions() != null){
+            result.getSuggestions().forEach(suggestion ->
+                    suggestions.add(format(suggestion.getWorkout(), suggestion.getDescription())));
+        }
+
+        List<String> safety = result.getSafety() == null ? List.of() : result.getSafety();
+
+        return Recommendation.builder()
+                .recommendation(fullAnalysis.toString().trim())
+                .improvements(improvements.isEmpty()?
+                        Collections.singletonList("No specific improvements"):
+                        improvements)
+                .suggestions(suggestions.isEmpty()?
+                        Collections.singletonList("No specific suggestions"):
+                        suggestions)
+                .safety(safety.isEmpty()?
+                        Collections.singletonList("Follow General Safety Guidelines"):
+                        safety);
+    }
+
+    static String stripCodeFence(String text) {
+        int start = 0;
+        int end = text.length();
+        while(start < end && Character.isWhitespace(text.charAt(start))){
+            start++;
+        }
+        while(end > start && Character.isWhitespace(text.charAt(end - 1))){
+            end--;
+        }
+        if(text.startsWith(CODE_FENCE, start)){
+            start += CODE_FENCE.length();
+            while(start < end && Character.isLetter(text.charAt(start))){
+                start++;
+            }
+            if(end - start >= CODE_FENCE.length() && text.startsWith(CODE_FENCE, end - CODE_FENCE.length())){
+                end -= CODE_FENCE.length();
+            }
+            while(start < end && Character.isWhitespace(text.charAt(start))){
+                start++;
+            }
+            while(end > start && Character.isWhitespace(text.charAt(end - 1))){
+                end--;
+            }
+        }
+        return start == 0 && end == text.length() ? text : text.substring(start, end);
+    }
+
+    private static boolean moveToField(JsonParser parser, String name) throws IOException {
+        while(parser.nextToken() == JsonToken.FIELD_NAME){
+            if(name.equals(parser.currentName())){
+                return true;
+            }
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static void addAnalysisSection(StringBuilder fullAnalysis, String prefix, String value) {
+        if(value != null){
+            fullAnalysis.append(prefix).append(value).append('\n');
+        }
+    }
+
+    private static String format(String first, String second) {
+        return (first == null ? "" : first) + ": " + (second == null ? "" : second) + " ";
+    }
+}
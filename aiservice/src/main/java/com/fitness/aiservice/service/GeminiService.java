@@ -1,26 +1,66 @@
 package com.fitness.aiservice.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
 
+import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class GeminiService {
     private final WebClient webClient;
+    private final GeminiRateLimiter rateLimiter;
+    private final GeminiHedgingPolicy hedgingPolicy;
+    private final Timer requestSuccess;
+    private final Timer requestFailure;
+    private final DistributionSummary requestSize;
 
-    @Value("${GEMINI_API_URL}")
-    private String geminiUrl;
+    private final URI endpoint;
 
-    @Value("${GEMINI_API_KEY}")
-    private String geminiKey;
+    public GeminiService(@Qualifier("geminiWebClient") WebClient webClient,
+                         GeminiRateLimiter rateLimiter,
+                         GeminiHedgingPolicy hedgingPolicy,
+                         MeterRegistry meterRegistry,
+                         @Value("${GEMINI_API_URL}") String geminiUrl) {
+        this.webClient = webClient;
+        // the key travels as the x-goog-api-key header set on the client; drop a legacy "?key=" suffix
+        this.endpoint = UriComponentsBuilder.fromUriString(geminiUrl).replaceQueryParam("key").build().toUri();
+        this.rateLimiter = rateLimiter;
+        this.hedgingPolicy = hedgingPolicy;
+        this.requestSuccess = requestTimer(meterRegistry, "success");
+        this.requestFailure = requestTimer(meterRegistry, "failure");
+        this.requestSize = DistributionSummary.builder("gemini.request.size")
+                .description("Size of the prompt text sent to Gemini")
+                .baseUnit("characters")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
-    public GeminiService(WebClient.Builder webClientBuilder) {
-        this.webClient = webClientBuilder.build();
+    /**
+     * Time spent on the HTTP call itself, after a rate limiter permit was granted.
+     */
+    private static Timer requestTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("gemini.request")
+                .description("Gemini generateContent call latency")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     public String getAnswers(String question){
+        return getAnswersAsync(question).block();
+    }
+
+    public Mono<String> getAnswersAsync(String question){
         Map<String , Object> requestBody = Map.of(
                 "contents",new Object[]{
                         Map.of("parts",new Object[]{
@@ -29,13 +69,19 @@ public class GeminiService {
                 }
         );
 
-        return webClient.post()
-                .uri(geminiUrl+geminiKey)
-                .header("Content-Type","application/json")
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
+        requestSize.record(question.length());
+        return hedgingPolicy.execute(started -> rateLimiter.execute(question, () -> Mono.defer(() -> {
+            started.run();
+            long start = System.nanoTime();
+            return webClient.post()
+                    .uri(endpoint)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .doOnSuccess(response -> requestSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(e -> requestFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        })));
 
     }
 }
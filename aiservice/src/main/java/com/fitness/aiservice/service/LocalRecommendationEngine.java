@@ -0,0 +1,165 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.GeminiAnalysis;
+import com.fitness.aiservice.model.Recommendation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Rule-based recommendations for light activities that do not need a model round trip. The
+ * analysis is derived from duration, calories per minute and the known metrics, and the
+ * improvements, suggestions and safety points come from a per-type template. The result goes
+ * through {@link GeminiResponseParser#toRecommendation} so it is shaped like a Gemini one.
+ */
+@Component
+@RequiredArgsConstructor
+public class LocalRecommendationEngine {
+
+    private record Template(String name,
+                            double lightCaloriesPerMinute,
+                            double vigorousCaloriesPerMinute,
+                            int shortMinutes,
+                            GeminiAnalysis.Improvement improvement,
+                            GeminiAnalysis.Suggestion suggestion,
+                            List<String> safety) {
+    }
+
+    private static final Template GENERIC = new Template("session", 3, 7, 15,
+            improvement("Consistency", "Repeat this session at least three times a week to build a steady habit."),
+            suggestion("Active recovery", "Follow up with 20 minutes of easy movement such as walking or mobility work."),
+            List.of("Warm up before starting", "Stay hydrated", "Stop if you feel pain or dizziness"));
+
+    private static final Map<String, Template> TEMPLATES = Map.of(
+            "STRETCHING", new Template("stretching session", 2, 4, 10,
+                    improvement("Hold time", "Hold each static stretch for 20 to 30 seconds and breathe slowly through it."),
+                    suggestion("Mobility flow", "10 minutes of hip, thoracic spine and shoulder mobility drills before your next workout."),
+                    List.of("Never bounce into a stretch", "Stretch to mild tension, not pain", "Warm up briefly before deep stretches")),
+            "YOGA", new Template("yoga session", 2.5, 5, 20,
+                    improvement("Breath control", "Keep a steady breath through each pose; shorten the hold if breathing becomes strained."),
+                    suggestion("Balance practice", "A 20 minute flow focusing on standing balance poses and core engagement."),
+                    List.of("Use props to avoid forcing a pose", "Avoid deep inversions with neck or blood pressure issues", "Stay hydrated")),
+            "WALKING", new Template("walk", 3, 6, 20,
+                    improvement("Pace", "Add short intervals of brisk walking to raise your average pace."),
+                    suggestion("Interval walk", "30 minutes alternating 3 minutes brisk and 2 minutes easy walking."),
+                    List.of("Wear supportive footwear", "Stay visible near traffic", "Stay hydrated"))
+    );
+
+    private final GeminiResponseParser responseParser;
+
+    public Recommendation recommend(Activity activity) {
+        Template template = TEMPLATES.getOrDefault(normalize(activity.getType()), GENERIC);
+        int duration = activity.getDuration() == null ? 0 : activity.getDuration();
+        int calories = activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned();
+
+        GeminiAnalysis analysis = new GeminiAnalysis();
+        GeminiAnalysis.Analysis details = new GeminiAnalysis.Analysis();
+        details.setOverall(overall(template, duration, calories));
+        details.setPace(pace(activity));
+        details.setHeartRate(heartRate(activity));
+        details.setCaloriesBurned(caloriesBurned(template, duration, calories));
+        analysis.setAnalysis(details);
+
+        List<GeminiAnalysis.Improvement> improvements = new ArrayList<>();
+        if(duration < template.shortMinutes()){
+            improvements.add(improvement("Duration", "Extend the " + template.name() + " to at least "
+                    + template.shortMinutes() + " minutes to get more benefit from it."));
+        }
+        improvements.add(template.improvement());
+        analysis.setImprovements(improvements);
+        analysis.setSuggestions(List.of(template.suggestion()));
+        analysis.setSafety(template.safety());
+
+        return responseParser.toRecommendation(analysis)
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private static String overall(Template template, int duration, int calories) {
+        String length = duration < template.shortMinutes() ? "short" : "solid";
+        return String.format(Locale.ROOT, "A %s %d minute %s at %s intensity.",
+                length, duration, template.name(), intensity(template, duration, calories));
+    }
+
+    private static String caloriesBurned(Template template, int duration, int calories) {
+        if(duration <= 0){
+            return calories + " calories burned.";
+        }
+        return String.format(Locale.ROOT, "%d calories burned, about %.1f per minute, which is %s for a %s.",
+                calories, (double) calories / duration, intensity(template, duration, calories), template.name());
+    }
+
+    private static String intensity(Template template, int duration, int calories) {
+        if(duration <= 0){
+            return "unknown";
+        }
+        double perMinute = (double) calories / duration;
+        if(perMinute < template.lightCaloriesPerMinute()){
+            return "light";
+        }
+        return perMinute < template.vigorousCaloriesPerMinute() ? "moderate" : "vigorous";
+    }
+
+    /**
+     * Pace from distance when it was recorded, otherwise cadence from the step count, which is
+     * what most phones report for walks.
+     */
+    private static String pace(Activity activity) {
+        OptionalDouble pace = ActivityMetrics.paceMinPerKm(activity);
+        if(pace.isEmpty()){
+            return cadence(activity);
+        }
+        double minutesPerKm = pace.getAsDouble();
+        String assessment = minutesPerKm <= 10 ? "a brisk" : minutesPerKm <= 13 ? "a steady" : "an easy";
+        return String.format(Locale.ROOT, "Average pace of %.1f min/km, %s pace.", minutesPerKm, assessment);
+    }
+
+    private static String cadence(Activity activity) {
+        OptionalDouble steps = ActivityMetrics.steps(activity);
+        if(steps.isEmpty() || activity.getDuration() == null || activity.getDuration() <= 0){
+            return "No distance recorded, so pace could not be assessed.";
+        }
+        double stepsPerMinute = steps.getAsDouble() / activity.getDuration();
+        String assessment = stepsPerMinute >= 120 ? "a brisk" : stepsPerMinute >= 100 ? "a steady" : "an easy";
+        return String.format(Locale.ROOT, "%.0f steps at about %.0f steps per minute, %s pace.",
+                steps.getAsDouble(), stepsPerMinute, assessment);
+    }
+
+    private static String heartRate(Activity activity) {
+        OptionalDouble heartRate = ActivityMetrics.heartRate(activity);
+        if(heartRate.isEmpty()){
+            return "No heart rate data recorded.";
+        }
+        double bpm = heartRate.getAsDouble();
+        String zone = bpm < 100 ? "a light recovery zone" : bpm < 130 ? "a moderate aerobic zone" : "an elevated zone for this activity";
+        return String.format(Locale.ROOT, "Average heart rate of %.0f bpm, in %s.", bpm, zone);
+    }
+
+    private static String normalize(String type) {
+        return type == null ? "" : type.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static GeminiAnalysis.Improvement improvement(String area, String recommendation) {
+        GeminiAnalysis.Improvement improvement = new GeminiAnalysis.Improvement();
+        improvement.setArea(area);
+        improvement.setRecommendation(recommendation);
+        return improvement;
+    }
+
+    private static GeminiAnalysis.Suggestion suggestion(String workout, String description) {
+        GeminiAnalysis.Suggestion suggestion = new GeminiAnalysis.Suggestion();
+        suggestion.setWorkout(workout);
+        suggestion.setDescription(description);
+        return suggestion;
+    }
+}
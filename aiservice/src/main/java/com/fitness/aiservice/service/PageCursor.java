@@ -0,0 +1,46 @@
+package com.fitness.aiservice.service;
+
+import org.bson.types.ObjectId;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position of a newest-first page: the sort timestamp of the last item, empty when
+ * it has none, and its id, base64url encoded as {@code "timestamp,id"}. Anything that does not
+ * decode to exactly that, including an id that is not an ObjectId, is answered with 400 before
+ * it reaches a query.
+ */
+record PageCursor(LocalDateTime sortKey, String id) {
+
+    private static final int MAX_LENGTH = 128;
+
+    static String encode(LocalDateTime sortKey, String id) {
+        String position = (sortKey == null ? "" : sortKey.toString()) + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageCursor decode(String cursor) {
+        if(cursor.length() > MAX_LENGTH){
+            throw invalid(cursor);
+        }
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",", -1);
+            if(position.length != 2 || !ObjectId.isValid(position[1])){
+                throw invalid(cursor);
+            }
+            return new PageCursor(position[0].isEmpty() ? null : LocalDateTime.parse(position[0]), position[1]);
+        }
+        catch (IllegalArgumentException | DateTimeParseException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    private static ResponseStatusException invalid(String cursor) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor : " + cursor);
+    }
+}
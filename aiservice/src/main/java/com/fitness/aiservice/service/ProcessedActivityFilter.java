@@ -0,0 +1,70 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.repository.ReactiveRecommendationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Tells whether an activity already has a recommendation. A bounded in-memory set of recently
+ * stored activity ids answers redeliveries without a round trip; anything else is checked
+ * against the unique {@code activityId} index in Mongo. Ids are only added once the
+ * recommendation is written, so a failed attempt is never mistaken for a processed one.
+ */
+@Service
+public class ProcessedActivityFilter {
+
+    private final ReactiveRecommendationRepository reactiveRecommendationRepository;
+    private final Cache<String, Boolean> recentlyProcessed;
+    private final Counter memoryHits;
+    private final Counter mongoHits;
+
+    public ProcessedActivityFilter(ReactiveRecommendationRepository reactiveRecommendationRepository,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${ai.idempotency.max-size:100000}") long maxSize,
+                                   @Value("${ai.idempotency.ttl:24h}") Duration ttl) {
+        this.reactiveRecommendationRepository = reactiveRecommendationRepository;
+        this.recentlyProcessed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.memoryHits = duplicates(meterRegistry, "memory");
+        this.mongoHits = duplicates(meterRegistry, "mongo");
+    }
+
+    private static Counter duplicates(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("ai.activity.duplicates")
+                .description("Redelivered or duplicate activities skipped before calling Gemini")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    public Mono<Boolean> isProcessed(String activityId) {
+        if(activityId == null){
+            return Mono.just(false);
+        }
+        if(recentlyProcessed.getIfPresent(activityId) != null){
+            memoryHits.increment();
+            return Mono.just(true);
+        }
+        return reactiveRecommendationRepository.existsByActivityId(activityId)
+                .doOnNext(exists -> {
+                    if(exists){
+                        mongoHits.increment();
+                        markProcessed(activityId);
+                    }
+                });
+    }
+
+    public void markProcessed(String activityId) {
+        if(activityId != null){
+            recentlyProcessed.put(activityId, Boolean.TRUE);
+        }
+    }
+}
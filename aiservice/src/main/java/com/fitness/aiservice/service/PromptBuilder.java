@@ -0,0 +1,348 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds Gemini prompts for single and batched activities. The instruction blocks are rendered
+ * once; only the activity lines are appended per request. Additional metrics are sent as compact
+ * JSON, with long numeric series (GPS tracks, heart rate samples) summarized to count, min, max,
+ * mean, p50, p90 and a few evenly spaced samples. If a prompt still exceeds
+ * {@code ai.prompt.token-budget}, the samples are dropped and then the largest metrics, until it fits.
+ * When the user's training stats are cached, a short history summary is added after the metrics.
+ */
+@Component
+@Slf4j
+public class PromptBuilder {
+
+    private static final String SINGLE_HEADER = """
+              Analyze this fitness activity and provide detailed recommendations in the following format
+              {
+                  "analysis" : {
+                      "overall": "Overall analysis here",
+                      "pace": "Pace analysis here",
+                      "heartRate": "Heart rate analysis here",
+                      "CaloriesBurned": "Calories Burned here"
+                  },
+                  "improvements": [
+                      {
+                          "area": "Area name",
+                          "recommendation": "Detailed Recommendation"
+                      }
+                  ],
+                  "suggestions" : [
+                      {
+                          "workout": "Workout name",
+                          "description": "Detailed workout description"
+                      }
+                  ],
+                  "safety": [
+                      "Safety point 1",
+                      "Safety point 2"
+                  ]
+              }
+
+              Analyze this activity:
+            """;
+
+    private static final String SINGLE_FOOTER = """
+
+              provide detailed analysis focusing on performance, improvements, next workout suggestions, and safety guidelines
+              Ensure the response follows the EXACT JSON format shown above.
+            """;
+
+    private static final String BATCH_HEADER = """
+              Analyze each of the following fitness activities and provide detailed recommendations.
+              Respond with a JSON array containing exactly one object per activity, in the following format
+              [
+                  {
+                      "activityId": "Id of the analyzed activity",
+                      "analysis" : {
+                          "overall": "Overall analysis here",
+                          "pace": "Pace analysis here",
+                          "heartRate": "Heart rate analysis here",
+                          "CaloriesBurned": "Calories Burned here"
+                      },
+                      "improvements": [
+                          {
+                              "area": "Area name",
+                              "recommendation": "Detailed Recommendation"
+                          }
+                      ],
+                      "suggestions" : [
+                          {
+                              "workout": "Workout name",
+                              "description": "Detailed workout description"
+                          }
+                      ],
+                      "safety": [
+                          "Safety point 1",
+                          "Safety point 2"
+                      ]
+                  }
+              ]
+
+              Analyze these activities:
+            """;
+
+    private static final String BATCH_FOOTER = """
+
+              provide detailed analysis focusing on performance, improvements, next workout suggestions, and safety guidelines for every activity
+              Ensure the response is a JSON array following the EXACT format shown above, with one entry per Activity Id.
+            """;
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder().build();
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final UserTrainingStatsService userTrainingStatsService;
+    private final int tokenBudget;
+    private final int seriesThreshold;
+    private final int seriesSamples;
+    private final int maxStringLength;
+
+    private final DistributionSummary promptSize;
+    private final DistributionSummary promptTokens;
+    private final Counter truncated;
+    private final Timer buildTime;
+
+    public PromptBuilder(UserTrainingStatsService userTrainingStatsService,
+                         MeterRegistry meterRegistry,
+                         @Value("${ai.prompt.token-budget:2000}") int tokenBudget,
+                         @Value("${ai.prompt.series-threshold:16}") int seriesThreshold,
+                         @Value("${ai.prompt.series-samples:12}") int seriesSamples,
+                         @Value("${ai.prompt.max-string-length:200}") int maxStringLength) {
+        this.userTrainingStatsService = userTrainingStatsService;
+        this.tokenBudget = tokenBudget;
+        this.seriesThreshold = seriesThreshold;
+        this.seriesSamples = seriesSamples;
+        this.maxStringLength = maxStringLength;
+        this.promptSize = DistributionSummary.builder("ai.prompt.size")
+                .description("Size of prompts sent to Gemini")
+                .baseUnit("characters")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.promptTokens = DistributionSummary.builder("ai.prompt.tokens")
+                .description("Estimated tokens of prompts sent to Gemini")
+                .baseUnit("tokens")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.truncated = Counter.builder("ai.prompt.truncated")
+                .description("Prompts whose metrics had to be cut to fit the token budget")
+                .register(meterRegistry);
+        this.buildTime = Timer.builder("ai.prompt.build")
+                .description("Time to build a prompt")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public String buildPrompt(Activity activity) {
+        long start = System.nanoTime();
+        int metricsBudget = tokenBudget * CHARS_PER_TOKEN - SINGLE_HEADER.length() - SINGLE_FOOTER.length() - 120;
+        StringBuilder prompt = new StringBuilder(SINGLE_HEADER.length() + SINGLE_FOOTER.length() + 512)
+                .append(SINGLE_HEADER);
+        appendActivity(prompt, activity, "  ", metricsBudget);
+        String text = prompt.append(SINGLE_FOOTER).toString();
+        record(text, activity.getId(), start);
+        return text;
+    }
+
+    public String buildBatchPrompt(List<Activity> activities) {
+        long start = System.nanoTime();
+        int metricsBudget = (tokenBudget * CHARS_PER_TOKEN - BATCH_HEADER.length() - BATCH_FOOTER.length()) / Math.max(activities.size(), 1) - 160;
+        StringBuilder prompt = new StringBuilder(BATCH_HEADER.length() + BATCH_FOOTER.length() + activities.size() * 512)
+                .append(BATCH_HEADER);
+        for(Activity activity : activities){
+            prompt.append("  - Activity Id: ").append(activity.getId()).append('\n');
+            appendActivity(prompt, activity, "    ", metricsBudget);
+        }
+        String text = prompt.append(BATCH_FOOTER).toString();
+        record(text, activities.size() + " batched activities", start);
+        return text;
+    }
+
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private void appendActivity(StringBuilder prompt, Activity activity, String indent, int metricsBudget) {
+        String history = userTrainingStatsService.summary(activity).orElse(null);
+        if(history != null){
+            metricsBudget -= history.length();
+        }
+        prompt.append(indent).append("Activity Type: ").append(activity.getType()).append('\n')
+                .append(indent).append("Duration: ").append(activity.getDuration()).append(" minutes\n")
+                .append(indent).append("calories Burned: ").append(activity.getCaloriesBurned()).append('\n')
+                .append(indent).append("Additional Metrics: ").append(compactMetrics(activity.getAdditionalMetrics(), metricsBudget)).append('\n');
+        if(history != null){
+            prompt.append(indent).append("Training History: ").append(history).append('\n');
+        }
+    }
+
+    private void record(String prompt, Object subject, long start) {
+        buildTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        int tokens = estimateTokens(prompt);
+        promptSize.record(prompt.length());
+        promptTokens.record(tokens);
+        log.debug("Prompt for {} : {} characters, ~{} tokens", subject, prompt.length(), tokens);
+    }
+
+    String compactMetrics(Map<String, Object> metrics, int charBudget) {
+        if(metrics == null || metrics.isEmpty()){
+            return "{}";
+        }
+        String json = toJson(summarizeMap(metrics, seriesSamples));
+        if(json.length() <= charBudget){
+            return json;
+        }
+        truncated.increment();
+        Map<String, Object> summary = summarizeMap(metrics, 0);
+        json = toJson(summary);
+        if(json.length() <= charBudget){
+            return json;
+        }
+        List<String> largestFirst = new ArrayList<>(summary.keySet());
+        largestFirst.sort(Comparator.comparingInt((String key) -> toJson(summary.get(key)).length()).reversed());
+        List<String> omitted = new ArrayList<>();
+        for(String key : largestFirst){
+            summary.remove(key);
+            omitted.add(key);
+            Map<String, Object> remaining = new LinkedHashMap<>(summary);
+            remaining.put("omitted", omitted);
+            json = toJson(remaining);
+            if(json.length() <= charBudget){
+                return json;
+            }
+        }
+        // with many metrics even their names can exceed a batch slot's share, so only count them
+        json = toJson(Map.of("omitted", omitted));
+        return json.length() <= charBudget ? json : toJson(Map.of("omitted", omitted.size()));
+    }
+
+    private Map<String, Object> summarizeMap(Map<?, ?> map, int samples) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        map.forEach((key, value) -> summary.put(String.valueOf(key), summarize(value, samples)));
+        return summary;
+    }
+
+    private Object summarize(Object value, int samples) {
+        if(value instanceof Map<?, ?> map){
+            return summarizeMap(map, samples);
+        }
+        if(value instanceof Collection<?> collection){
+            return summarizeCollection(collection, samples);
+        }
+        if(value instanceof Double || value instanceof Float){
+            return round(((Number) value).doubleValue());
+        }
+        if(value instanceof String text && text.length() > maxStringLength){
+            return text.substring(0, maxStringLength) + "...";
+        }
+        return value;
+    }
+
+    private Object summarizeCollection(Collection<?> collection, int samples) {
+        if(collection.stream().allMatch(Number.class::isInstance)){
+            double[] series = collection.stream().mapToDouble(n -> ((Number) n).doubleValue()).toArray();
+            return series.length > seriesThreshold ? seriesSummary(series, samples) : roundAll(series);
+        }
+        if(collection.size() > seriesThreshold && collection.stream().allMatch(Map.class::isInstance)){
+            return summarizeRecords(collection, samples);
+        }
+        if(collection.size() > seriesThreshold){
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("n", collection.size());
+            summary.put("head", collection.stream().limit(Math.max(samples, 1)).map(item -> summarize(item, samples)).toList());
+            return summary;
+        }
+        return collection.stream().map(item -> summarize(item, samples)).toList();
+    }
+
+    /**
+     * A track of records such as {@code {lat, lon, elevation, heartRate}} becomes one series
+     * summary per numeric field.
+     */
+    private Map<String, Object> summarizeRecords(Collection<?> records, int samples) {
+        Map<String, List<Double>> fields = new LinkedHashMap<>();
+        for(Object record : records){
+            ((Map<?, ?>) record).forEach((key, value) -> {
+                if(value instanceof Number number){
+                    fields.computeIfAbsent(String.valueOf(key), k -> new ArrayList<>()).add(number.doubleValue());
+                }
+            });
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("n", records.size());
+        fields.forEach((key, values) -> summary.put(key,
+                seriesSummary(values.stream().mapToDouble(Double::doubleValue).toArray(), samples)));
+        return summary;
+    }
+
+    private Map<String, Object> seriesSummary(double[] series, int samples) {
+        double[] sorted = series.clone();
+        Arrays.sort(sorted);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("n", series.length);
+        summary.put("min", round(sorted[0]));
+        summary.put("max", round(sorted[sorted.length - 1]));
+        summary.put("avg", round(Arrays.stream(series).average().orElse(0)));
+        summary.put("p50", round(percentile(sorted, 0.50)));
+        summary.put("p90", round(percentile(sorted, 0.90)));
+        if(samples > 0){
+            int count = Math.min(samples, series.length);
+            double[] downsampled = new double[count];
+            for(int i = 0; i < count; i++){
+                downsampled[i] = series[(int) ((long) i * (series.length - 1) / Math.max(count - 1, 1))];
+            }
+            summary.put("samples", roundAll(downsampled));
+        }
+        return summary;
+    }
+
+    private static double percentile(double[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    private static List<Number> roundAll(double[] values) {
+        List<Number> rounded = new ArrayList<>(values.length);
+        for(double value : values){
+            rounded.add(round(value));
+        }
+        return rounded;
+    }
+
+    private static Number round(double value) {
+        double rounded = Math.round(value * 100) / 100.0;
+        if(rounded == Math.rint(rounded)){
+            return (long) rounded;
+        }
+        return rounded;
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return MAPPER.writeValueAsString(value);
+        }
+        catch (JsonProcessingException e) {
+            return String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking consumer for the activity queue. The returned {@link Mono} is acked by the
+ * container only once the recommendation is stored, so the consumer thread is released straight
+ * away and the number of Gemini calls in flight is bounded by the container prefetch.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "ai.pipeline.mode", havingValue = "reactive")
+public class ReactiveActivityMessageListener {
+
+    private final RecommendationPipeline recommendationPipeline;
+
+    @RabbitListener(queues = "${rabbitmq.queue.name}", containerFactory = "reactiveListenerContainerFactory")
+    public Mono<Void> processActivity(Activity activity,
+                                      @Header(name = ActivityRetryHandler.ATTEMPT_HEADER, required = false) Integer attempt) {
+        log.info("Received activity for processing : {} " , activity.getId());
+        return recommendationPipeline.process(activity, attempt == null ? 0 : attempt)
+                .doOnError(e -> log.error("Failed to process activity {} : {}", activity.getId(), e.getMessage()))
+                .then();
+    }
+}
@@ -0,0 +1,131 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.GeminiAnalysis;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups queued activities into a single Gemini prompt. Activities are collected until
+ * {@code ai.batch.max-size} are waiting or {@code ai.batch.max-wait} has passed, and the model is asked
+ * for a JSON array keyed by activity id. {@link #submit(Activity)} completes empty when the batch
+ * response has no usable entry for the activity or no answer arrived within
+ * {@code ai.batch.submit-timeout}, and the caller falls back to a single prompt.
+ * <p>
+ * The buffer uses fair backpressure: while all {@code concurrency} batches are in flight, timed
+ * out buffers wait for a free slot instead of failing the pipeline.
+ */
+@Service
+@Slf4j
+public class RecommendationBatcher {
+
+    private final GeminiService geminiService;
+    private final GeminiResponseParser responseParser;
+    private final PromptBuilder promptBuilder;
+    private final RecommendationMetrics recommendationMetrics;
+    private final boolean enabled;
+    private final Duration submitTimeout;
+    private final Sinks.Many<PendingActivity> pending = Sinks.many().unicast().onBackpressureBuffer();
+
+    private record PendingActivity(Activity activity, Sinks.One<GeminiAnalysis> result) {
+    }
+
+    public RecommendationBatcher(GeminiService geminiService,
+                                 GeminiResponseParser responseParser,
+                                 PromptBuilder promptBuilder,
+                                 RecommendationMetrics recommendationMetrics,
+                                 @Value("${ai.batch.enabled:false}") boolean enabled,
+                                 @Value("${ai.batch.max-size:8}") int maxSize,
+                                 @Value("${ai.batch.max-wait:500ms}") Duration maxWait,
+                                 @Value("${ai.batch.concurrency:16}") int concurrency,
+                                 @Value("${ai.batch.submit-timeout:30s}") Duration submitTimeout) {
+        this.geminiService = geminiService;
+        this.responseParser = responseParser;
+        this.promptBuilder = promptBuilder;
+        this.recommendationMetrics = recommendationMetrics;
+        this.enabled = enabled;
+        this.submitTimeout = submitTimeout;
+        if(enabled){
+            pending.asFlux()
+                    .bufferTimeout(maxSize, maxWait, true)
+                    .flatMap(this::dispatch, concurrency)
+                    .subscribe();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Mono<GeminiAnalysis> submit(Activity activity) {
+        Sinks.One<GeminiAnalysis> result = Sinks.one();
+        pending.emitNext(new PendingActivity(activity, result), Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+        return result.asMono()
+                .timeout(submitTimeout, Mono.defer(() -> {
+                    log.warn("No batched answer for activity {} within {}, falling back to a single prompt",
+                            activity.getId(), submitTimeout);
+                    return Mono.empty();
+                }));
+    }
+
+    private Mono<Void> dispatch(List<PendingActivity> batch) {
+        if(batch.size() == 1){
+            batch.get(0).result().tryEmitEmpty();
+            return Mono.empty();
+        }
+        log.info("Sending batch of {} activities to AI", batch.size());
+        return geminiService.getAnswersAsync(promptBuilder.buildBatchPrompt(batch.stream().map(PendingActivity::activity).toList()))
+                .map(this::parseBatchResponse)
+                .doOnNext(byActivityId -> batch.forEach(item -> {
+                    GeminiAnalysis analysis = byActivityId.get(item.activity().getId());
+                    if(analysis != null){
+                        item.result().tryEmitValue(analysis);
+                    }
+                    else {
+                        item.result().tryEmitEmpty();
+                    }
+                }))
+                .doOnError(e -> batch.forEach(item -> item.result().tryEmitError(e)))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private Map<String, GeminiAnalysis> parseBatchResponse(String aiResponse) {
+        Map<String, GeminiAnalysis> byActivityId = new HashMap<>();
+        try {
+            List<GeminiAnalysis> analyses = recommendationMetrics.timeParse(aiResponse, () -> {
+                try {
+                    return responseParser.parseBatch(aiResponse);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            for(GeminiAnalysis analysis : analyses){
+                if(analysis.getActivityId() != null){
+                    byActivityId.put(analysis.getActivityId(), analysis);
+                }
+            }
+        }
+        catch (Exception e) {
+            log.warn("Unable to parse batched AI response, falling back to single prompts : {}", e.getMessage());
+        }
+        return byActivityId;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pending.tryEmitComplete();
+    }
+}
@@ -0,0 +1,115 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.CachedRecommendation;
+import com.fitness.aiservice.model.Recommendation;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Two-tier cache of Gemini recommendations keyed by {@link ActivityFingerprint}: a bounded
+ * in-heap Caffeine cache in front of the {@code recommendation_cache} collection, whose
+ * entries are expired by a TTL index.
+ */
+@Service
+@Slf4j
+public class RecommendationCache {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Cache<String, CachedRecommendation> memoryCache;
+    private final boolean enabled;
+    private final Duration mongoTtl;
+
+    private final Counter memoryHits;
+    private final Counter memoryMisses;
+    private final Counter mongoHits;
+    private final Counter mongoMisses;
+
+    public RecommendationCache(ReactiveMongoTemplate reactiveMongoTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${ai.cache.enabled:true}") boolean enabled,
+                               @Value("${ai.cache.memory.max-size:10000}") long maxSize,
+                               @Value("${ai.cache.memory.ttl:1h}") Duration memoryTtl,
+                               @Value("${ai.cache.mongo.ttl:7d}") Duration mongoTtl) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.enabled = enabled;
+        this.mongoTtl = mongoTtl;
+        this.memoryCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(memoryTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memoryCache, "recommendationCache");
+
+        this.memoryHits = requests(meterRegistry, "memory", "hit");
+        this.memoryMisses = requests(meterRegistry, "memory", "miss");
+        this.mongoHits = requests(meterRegistry, "mongo", "hit");
+        this.mongoMisses = requests(meterRegistry, "mongo", "miss");
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("ai.recommendation.cache.requests")
+                .description("Recommendation cache lookups per tier")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public Mono<CachedRecommendation> get(String fingerprint) {
+        if(!enabled){
+            return Mono.empty();
+        }
+        CachedRecommendation cached = memoryCache.getIfPresent(fingerprint);
+        if(cached != null){
+            memoryHits.increment();
+            return Mono.just(cached);
+        }
+        memoryMisses.increment();
+        return reactiveMongoTemplate.findById(fingerprint, CachedRecommendation.class)
+                .filter(entry -> entry.getExpiresAt() == null || entry.getExpiresAt().isAfter(Instant.now()))
+                .doOnNext(entry -> {
+                    mongoHits.increment();
+                    memoryCache.put(fingerprint, entry);
+                })
+                .switchIfEmpty(Mono.fromRunnable(mongoMisses::increment))
+                .onErrorResume(e -> {
+                    log.warn("Recommendation cache lookup failed for {} : {}", fingerprint, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Stores the recommendation in memory right away and writes the Mongo tier in the background;
+     * a failed write only costs a future cache miss.
+     */
+    public void put(String fingerprint, Recommendation recommendation) {
+        if(!enabled){
+            return;
+        }
+        CachedRecommendation entry = CachedRecommendation.builder()
+                .fingerprint(fingerprint)
+                .activityType(recommendation.getActivityType())
+                .recommendation(recommendation.getRecommendation())
+                .improvements(recommendation.getImprovements())
+                .suggestions(recommendation.getSuggestions())
+                .safety(recommendation.getSafety())
+                .createdAt(LocalDateTime.now())
+                .expiresAt(Instant.now().plus(mongoTtl))
+                .build();
+        memoryCache.put(fingerprint, entry);
+        reactiveMongoTemplate.save(entry)
+                .subscribe(saved -> { },
+                        e -> log.warn("Failed to store cached recommendation {} : {}", fingerprint, e.getMessage()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Fans stored recommendations out to SSE subscribers. Stored recommendations are published to the
+ * recommendation events fanout exchange, and each instance feeds what it receives from its own
+ * queue into an in-process hub. Every subscriber gets a bounded buffer that drops its oldest
+ * events when the client cannot keep up, so one slow client never holds back the others.
+ */
+@Service
+@Slf4j
+public class RecommendationEventHub {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final Sinks.Many<Recommendation> events = Sinks.many().multicast().directBestEffort();
+    private final Counter dropped;
+
+    @Value("${rabbitmq.recommendation-events.exchange:recommendation.events}")
+    private String exchange;
+
+    @Value("${ai.events.buffer-size:64}")
+    private int bufferSize;
+
+    public RecommendationEventHub(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.dropped = Counter.builder("ai.recommendation.events.dropped")
+                .description("Recommendation events dropped for slow SSE subscribers")
+                .register(meterRegistry);
+    }
+
+    public Flux<Recommendation> subscribe(String userId) {
+        return events.asFlux()
+                .filter(recommendation -> userId.equals(recommendation.getUserId()))
+                .onBackpressureBuffer(bufferSize, recommendation -> dropped.increment(), BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    /**
+     * Publishes off the caller's thread; notifications are best effort and must never delay or
+     * fail the write that produced them.
+     */
+    public void publish(List<Recommendation> recommendations) {
+        Mono.fromRunnable(() -> recommendations.forEach(recommendation ->
+                        rabbitTemplate.convertAndSend(exchange, "", recommendation)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(done -> { },
+                        e -> log.warn("Failed to publish recommendation events : {}", e.getMessage()));
+    }
+
+    @RabbitListener(queues = "#{recommendationEventsQueue.name}")
+    public void onRecommendation(Recommendation recommendation) {
+        events.emitNext(recommendation, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+    }
+}
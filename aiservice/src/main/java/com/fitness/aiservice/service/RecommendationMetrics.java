@@ -0,0 +1,131 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Meters shared by the stages of the recommendation pipeline that have no state of their own to
+ * hang them on: response parsing, the Mongo save and the age of consumed messages.
+ */
+@Component
+public class RecommendationMetrics {
+
+    private final Timer parseSuccess;
+    private final Timer parseFailure;
+    private final Counter parseFailures;
+    private final Counter defaults;
+    private final DistributionSummary responseSize;
+    private final Timer singleSave;
+    private final Timer bulkSave;
+    private final Timer queueLag;
+    private final Timer retriedQueueLag;
+    private final AtomicLong latestQueueLagMillis = new AtomicLong();
+
+    public RecommendationMetrics(MeterRegistry meterRegistry) {
+        this.parseSuccess = parse(meterRegistry, "success");
+        this.parseFailure = parse(meterRegistry, "failure");
+        this.parseFailures = Counter.builder("ai.response.parse.failures")
+                .description("Gemini responses that could not be parsed into an analysis")
+                .register(meterRegistry);
+        this.defaults = Counter.builder("ai.recommendation.defaults")
+                .description("Default recommendations stored instead of a generated one")
+                .register(meterRegistry);
+        this.responseSize = DistributionSummary.builder("ai.response.size")
+                .description("Size of Gemini responses")
+                .baseUnit("characters")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.singleSave = save(meterRegistry, "single");
+        this.bulkSave = save(meterRegistry, "bulk");
+        this.queueLag = queueLag(meterRegistry, false);
+        this.retriedQueueLag = queueLag(meterRegistry, true);
+        Gauge.builder("ai.activity.queue.lag.latest", latestQueueLagMillis, AtomicLong::get)
+                .description("Age of the most recently consumed activity message")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    private static Timer parse(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("ai.response.parse")
+                .description("Time to parse a Gemini response")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer save(MeterRegistry meterRegistry, String mode) {
+        return Timer.builder("ai.recommendation.save")
+                .description("Time to store recommendations in Mongo")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer queueLag(MeterRegistry meterRegistry, boolean retried) {
+        return Timer.builder("ai.activity.queue.lag")
+                .description("Time between an activity being created and its message being consumed")
+                .tag("retried", String.valueOf(retried))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public <T> T timeParse(String response, Supplier<T> parse) {
+        if(response != null){
+            responseSize.record(response.length());
+        }
+        long start = System.nanoTime();
+        try {
+            T result = parse.get();
+            parseSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        }
+        catch (RuntimeException e) {
+            parseFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            parseFailures.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * @param mode {@code single} for one upsert, {@code bulk} for a write-behind flush
+     */
+    public <T> Mono<T> timeSave(String mode, Mono<T> save) {
+        Timer timer = switch (mode) {
+            case "single" -> singleSave;
+            case "bulk" -> bulkSave;
+            default -> throw new IllegalArgumentException("Unknown save mode " + mode);
+        };
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return save.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    public void recordDefault() {
+        defaults.increment();
+    }
+
+    public void recordConsumed(Activity activity, int attempt) {
+        if(activity.getCreatedAt() == null){
+            return;
+        }
+        Duration lag = Duration.between(activity.getCreatedAt(), LocalDateTime.now());
+        if(lag.isNegative()){
+            lag = Duration.ZERO;
+        }
+        (attempt > 0 ? retriedQueueLag : queueLag).record(lag);
+        latestQueueLagMillis.set(lag.toMillis());
+    }
+}
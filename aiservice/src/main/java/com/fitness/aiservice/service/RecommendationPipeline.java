@@ -0,0 +1,71 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Steps run for every consumed activity, shared by all listener modes: skip activities that
+ * already have a recommendation, generate one with the user's training history at hand, store
+ * it, and fold the activity into the history. Failures are handed to {@link ActivityRetryHandler}.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RecommendationPipeline {
+
+    private final ActivityAIService aiService;
+    private final RecommendationWriter recommendationWriter;
+    private final ProcessedActivityFilter processedActivityFilter;
+    private final UserTrainingStatsService userTrainingStatsService;
+    private final ActivityRetryHandler activityRetryHandler;
+    private final RecommendationMetrics recommendationMetrics;
+
+    /**
+     * @param attempt retries already made for this activity, from the {@value ActivityRetryHandler#ATTEMPT_HEADER} header
+     */
+    public Mono<Void> process(Activity activity, int attempt) {
+        recommendationMetrics.recordConsumed(activity, attempt);
+        return processedActivityFilter.isProcessed(activity.getId())
+                .flatMap(processed -> {
+                    if(processed){
+                        log.info("Skipping already processed activity : {} " , activity.getId());
+                        return Mono.empty();
+                    }
+                    return userTrainingStatsService.load(activity.getUserId())
+                            .then(Mono.defer(() -> aiService.generateRecommendationAsync(activity)))
+                            .flatMap(recommendationWriter::write)
+                            .then(Mono.defer(() -> recordStats(activity)));
+                })
+                .onErrorResume(e -> activityRetryHandler.handleFailure(activity, attempt, e));
+    }
+
+    public void processBlocking(Activity activity, int attempt) {
+        recommendationMetrics.recordConsumed(activity, attempt);
+        try {
+            if(Boolean.TRUE.equals(processedActivityFilter.isProcessed(activity.getId()).block())){
+                log.info("Skipping already processed activity : {} " , activity.getId());
+                return;
+            }
+            userTrainingStatsService.load(activity.getUserId()).block();
+            Recommendation recommendation = aiService.generateRecommendation(activity);
+            recommendationWriter.writeNow(recommendation).block();
+        }
+        catch (RuntimeException e) {
+            activityRetryHandler.handleFailure(activity, attempt, e).block();
+            return;
+        }
+        recordStats(activity).block();
+    }
+
+    private Mono<Void> recordStats(Activity activity) {
+        return userTrainingStatsService.record(activity)
+                .onErrorResume(e -> {
+                    log.warn("Unable to update training stats for activity {} : {}", activity.getId(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+}
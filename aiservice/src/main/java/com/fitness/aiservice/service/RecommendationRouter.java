@@ -0,0 +1,112 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides per activity whether {@link LocalRecommendationEngine} is good enough or Gemini is
+ * needed. {@code ai.local.routes} lists the activity types handled locally with their maximum
+ * duration in minutes, e.g. {@code STRETCHING:60,YOGA:45,WALKING:30}.
+ * <p>
+ * The latency saved by each local answer is estimated from a moving average of observed
+ * Gemini latencies, starting from {@code ai.local.assumed-gemini-latency}.
+ */
+@Component
+@Slf4j
+public class RecommendationRouter {
+
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final boolean enabled;
+    private final Map<String, Integer> maxDurationByType;
+    private final AtomicLong geminiLatencyNanos;
+
+    private final Counter localRoutes;
+    private final Counter geminiRoutes;
+    private final Timer localLatency;
+    private final Timer geminiLatency;
+    private final Counter latencySaved;
+
+    public RecommendationRouter(MeterRegistry meterRegistry,
+                                @Value("${ai.local.enabled:true}") boolean enabled,
+                                @Value("${ai.local.routes:STRETCHING:60,YOGA:45,WALKING:30}") List<String> routes,
+                                @Value("${ai.local.assumed-gemini-latency:3s}") Duration assumedGeminiLatency) {
+        this.enabled = enabled;
+        this.maxDurationByType = parseRoutes(routes);
+        this.geminiLatencyNanos = new AtomicLong(assumedGeminiLatency.toNanos());
+        this.localRoutes = routes(meterRegistry, "local");
+        this.geminiRoutes = routes(meterRegistry, "gemini");
+        this.localLatency = latency(meterRegistry, "local");
+        this.geminiLatency = latency(meterRegistry, "gemini");
+        this.latencySaved = Counter.builder("ai.recommendation.latency.saved")
+                .description("Estimated Gemini latency avoided by local recommendations")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        if(enabled){
+            log.info("Local recommendations enabled for {}", maxDurationByType);
+        }
+    }
+
+    private static Counter routes(MeterRegistry meterRegistry, String route) {
+        return Counter.builder("ai.recommendation.route")
+                .description("Recommendations generated per route")
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    private static Timer latency(MeterRegistry meterRegistry, String route) {
+        return Timer.builder("ai.recommendation.generation")
+                .description("Time to generate a recommendation per route")
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    private static Map<String, Integer> parseRoutes(List<String> routes) {
+        Map<String, Integer> maxDurationByType = new HashMap<>();
+        for(String route : routes){
+            String[] parts = route.split(":");
+            if(parts.length != 2){
+                throw new IllegalArgumentException("Invalid ai.local.routes entry '" + route + "', expected TYPE:maxMinutes");
+            }
+            maxDurationByType.put(parts[0].trim().toUpperCase(Locale.ROOT), Integer.parseInt(parts[1].trim()));
+        }
+        return maxDurationByType;
+    }
+
+    public boolean isLocal(Activity activity) {
+        if(!enabled || activity.getType() == null){
+            return false;
+        }
+        Integer maxDuration = maxDurationByType.get(activity.getType().trim().toUpperCase(Locale.ROOT));
+        return maxDuration != null && activity.getDuration() != null && activity.getDuration() <= maxDuration;
+    }
+
+    public void recordLocal(long elapsedNanos) {
+        localRoutes.increment();
+        localLatency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        long saved = geminiLatencyNanos.get() - elapsedNanos;
+        if(saved > 0){
+            latencySaved.increment(saved / 1e9);
+        }
+    }
+
+    public void recordGemini(long elapsedNanos) {
+        geminiRoutes.increment();
+        geminiLatency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        geminiLatencyNanos.updateAndGet(average ->
+                (long) (average + LATENCY_SMOOTHING * (elapsedNanos - average)));
+    }
+}
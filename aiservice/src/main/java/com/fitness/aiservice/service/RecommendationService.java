@@ -1,23 +1,95 @@
 package com.fitness.aiservice.service;
 
+import com.fitness.aiservice.dto.RecommendationPage;
 import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.repository.ReactiveRecommendationRepository;
 import com.fitness.aiservice.repository.RecommendationRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class RecommendationService {
     private final RecommendationRepository recommendationRepository;
+    private final ReactiveRecommendationRepository reactiveRecommendationRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${ai.recommendations.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${ai.recommendations.page.max-size:100}")
+    private int maxPageSize;
 
 
     public List<Recommendation> getUserRecommendation(String userId) {
         return recommendationRepository.findByUserId(userId);
     }
 
+    /**
+     * Streams straight from the Mongo cursor with backpressure, so the history is never
+     * materialized as a list however long it is.
+     */
+    public Flux<Recommendation> streamUserRecommendations(String userId) {
+        return reactiveRecommendationRepository.findByUserIdOrderByCreatedAtDesc(userId);
+    }
+
     public Recommendation getActivityRecommendation(String activityId) {
         return recommendationRepository.findByActivityId(activityId);
     }
+
+    /**
+     * Newest first, keyset paginated on (createdAt, id) so each page is a range scan of the
+     * (userId, createdAt, _id) index however deep the client pages.
+     */
+    public RecommendationPage getUserRecommendationPage(String userId, String cursor, Integer size,
+                                                        String activityType, LocalDateTime from, LocalDateTime to) {
+        int pageSize = size == null ? defaultPageSize : Math.clamp(size, 1, maxPageSize);
+
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if(activityType != null){
+            criteria.and("activityType").is(activityType);
+        }
+        if(from != null || to != null){
+            Criteria createdAt = criteria.and("createdAt");
+            if(from != null){
+                createdAt.gte(from);
+            }
+            if(to != null){
+                createdAt.lt(to);
+            }
+        }
+        if(cursor != null && !cursor.isBlank()){
+            PageCursor position = PageCursor.decode(cursor);
+            if(position.sortKey() == null){
+                criteria.andOperator(Criteria.where("createdAt").is(null).and("id").lt(position.id()));
+            }
+            else {
+                criteria.orOperator(
+                        Criteria.where("createdAt").lt(position.sortKey()),
+                        Criteria.where("createdAt").is(position.sortKey()).and("id").lt(position.id()),
+                        Criteria.where("createdAt").is(null));
+            }
+        }
+
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+                .limit(pageSize + 1);
+        List<Recommendation> recommendations = mongoTemplate.find(query, Recommendation.class);
+
+        if(recommendations.size() <= pageSize){
+            return new RecommendationPage(recommendations, null);
+        }
+        List<Recommendation> page = recommendations.subList(0, pageSize);
+        Recommendation last = page.get(pageSize - 1);
+        return new RecommendationPage(page, PageCursor.encode(last.getCreatedAt(), last.getId()));
+    }
 }
@@ -0,0 +1,137 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Persists recommendations as upserts keyed by activity id. With {@code ai.write-behind.enabled}
+ * saves are buffered and flushed as one unordered bulk write when {@code max-batch-size} is reached or {@code flush-interval}
+ * elapses. The {@link Mono} returned by {@link #write(Recommendation)} completes only once the
+ * batch holding the recommendation has been acknowledged by Mongo, so listeners can defer their
+ * Rabbit ack until then and keep at-least-once delivery.
+ * <p>
+ * Write-behind only pays off for the reactive and batch listeners, which keep many activities in
+ * flight. The thread-per-message listeners use {@link #writeNow(Recommendation)}, since a blocked
+ * thread waiting up to {@code flush-interval} gains nothing from the batch. A flush slower than
+ * {@code flush-interval} makes the buffer wait (fair backpressure) rather than fail.
+ */
+@Service
+@Slf4j
+public class RecommendationWriter {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ProcessedActivityFilter processedActivityFilter;
+    private final RecommendationEventHub recommendationEventHub;
+    private final RecommendationMetrics recommendationMetrics;
+    private final boolean writeBehind;
+    private final Sinks.Many<PendingWrite> pending = Sinks.many().unicast().onBackpressureBuffer();
+
+    private record PendingWrite(Recommendation recommendation, Sinks.Empty<Void> written) {
+    }
+
+    public RecommendationWriter(ReactiveMongoTemplate reactiveMongoTemplate,
+                                ProcessedActivityFilter processedActivityFilter,
+                                RecommendationEventHub recommendationEventHub,
+                                RecommendationMetrics recommendationMetrics,
+                                @Value("${ai.write-behind.enabled:false}") boolean writeBehind,
+                                @Value("${ai.write-behind.max-batch-size:100}") int maxBatchSize,
+                                @Value("${ai.write-behind.flush-interval:200ms}") Duration flushInterval) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.processedActivityFilter = processedActivityFilter;
+        this.recommendationEventHub = recommendationEventHub;
+        this.recommendationMetrics = recommendationMetrics;
+        this.writeBehind = writeBehind;
+        if(writeBehind){
+            pending.asFlux()
+                    .bufferTimeout(maxBatchSize, flushInterval, true)
+                    .concatMap(this::flush)
+                    .subscribe();
+        }
+    }
+
+    public Mono<Void> write(Recommendation recommendation) {
+        if(!writeBehind){
+            return writeNow(recommendation);
+        }
+        Sinks.Empty<Void> written = Sinks.empty();
+        pending.emitNext(new PendingWrite(recommendation, written), Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+        return written.asMono();
+    }
+
+    /**
+     * Single upsert, bypassing the write-behind buffer.
+     */
+    public Mono<Void> writeNow(Recommendation recommendation) {
+        return recommendationMetrics.timeSave("single", reactiveMongoTemplate.upsert(byActivityId(recommendation), toUpdate(recommendation), Recommendation.class))
+                .doOnSuccess(result -> {
+                    processedActivityFilter.markProcessed(recommendation.getActivityId());
+                    recommendationEventHub.publish(List.of(recommendation));
+                })
+                .then();
+    }
+
+    private Mono<Void> flush(List<PendingWrite> batch) {
+        // deferred so a failure building the bulk fails this batch only, not the whole stream
+        return Mono.defer(() -> {
+                    ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Recommendation.class);
+                    batch.forEach(item -> bulk.upsert(byActivityId(item.recommendation()), toUpdate(item.recommendation())));
+                    return recommendationMetrics.timeSave("bulk", bulk.execute());
+                })
+                .then()
+                .doOnSuccess(done -> {
+                    log.debug("Flushed {} recommendations", batch.size());
+                    batch.forEach(item -> {
+                        processedActivityFilter.markProcessed(item.recommendation().getActivityId());
+                        item.written().tryEmitEmpty();
+                    });
+                    recommendationEventHub.publish(batch.stream().map(PendingWrite::recommendation).toList());
+                })
+                .doOnError(e -> {
+                    log.error("Failed to flush {} recommendations : {}", batch.size(), e.getMessage());
+                    batch.forEach(item -> item.written().tryEmitError(e));
+                })
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    private Query byActivityId(Recommendation recommendation) {
+        return Query.query(Criteria.where("activityId").is(recommendation.getActivityId()));
+    }
+
+    /**
+     * Upsert keyed by activity id: a redelivered activity overwrites its recommendation fields with
+     * {@code $set} instead of adding a second document, and {@code createdAt} is only written by
+     * {@code $setOnInsert}, so the original creation time is kept.
+     */
+    Update toUpdate(Recommendation recommendation) {
+        Document document = new Document();
+        reactiveMongoTemplate.getConverter().write(recommendation, document);
+        document.remove("_id");
+        document.remove("_class");
+        Object createdAt = document.remove("createdAt");
+        Update update = new Update();
+        document.forEach(update::set);
+        update.setOnInsert("createdAt", createdAt != null ? createdAt : LocalDateTime.now());
+        return update;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pending.tryEmitComplete();
+    }
+}
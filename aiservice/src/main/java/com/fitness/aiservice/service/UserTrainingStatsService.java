@@ -0,0 +1,311 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.UserTrainingStats;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.IsoFields;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Keeps {@link UserTrainingStats} up to date as activities are consumed and renders the compact
+ * history summary added to prompts. Recently used aggregates are held in a Caffeine cache, so the
+ * pipeline loads a user's document at most once per cache lifetime. Updates are read, modify and
+ * save with a version check, and are retried from a fresh read on conflict.
+ */
+@Service
+@Slf4j
+public class UserTrainingStatsService {
+
+    private static final double SHORT_SMOOTHING = 0.3;
+    private static final double LONG_SMOOTHING = 0.05;
+    private static final int SUMMARY_WEEKS = 4;
+    private static final ObjectMapper MAPPER = JsonMapper.builder().build();
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Cache<String, UserTrainingStats> hotStats;
+    private final boolean enabled;
+    private final int weeks;
+    private final int recentActivityIds;
+    private final int maxRetries;
+
+    private final Counter updates;
+    private final Counter conflicts;
+
+    public UserTrainingStatsService(ReactiveMongoTemplate reactiveMongoTemplate,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${ai.stats.enabled:true}") boolean enabled,
+                                    @Value("${ai.stats.cache.max-size:50000}") long maxSize,
+                                    @Value("${ai.stats.cache.ttl:1h}") Duration ttl,
+                                    @Value("${ai.stats.weeks:8}") int weeks,
+                                    @Value("${ai.stats.recent-activity-ids:50}") int recentActivityIds,
+                                    @Value("${ai.stats.max-retries:5}") int maxRetries) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.enabled = enabled;
+        this.weeks = weeks;
+        this.recentActivityIds = recentActivityIds;
+        this.maxRetries = maxRetries;
+        this.hotStats = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, hotStats, "userTrainingStats");
+        this.updates = Counter.builder("ai.stats.updates")
+                .description("Activities folded into user training stats")
+                .register(meterRegistry);
+        this.conflicts = Counter.builder("ai.stats.conflicts")
+                .description("Concurrent user training stats updates that had to be retried")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Makes the user's aggregate available to {@link #summary(Activity)}. Completes empty for
+     * users without history; lookup failures are logged and ignored, the prompt just goes without.
+     */
+    public Mono<UserTrainingStats> load(String userId) {
+        if(!enabled || userId == null){
+            return Mono.empty();
+        }
+        UserTrainingStats cached = hotStats.getIfPresent(userId);
+        if(cached != null){
+            return Mono.just(cached);
+        }
+        return reactiveMongoTemplate.findById(userId, UserTrainingStats.class)
+                .doOnNext(stats -> hotStats.put(userId, stats))
+                .onErrorResume(e -> {
+                    log.warn("Unable to load training stats for user {} : {}", userId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Void> record(Activity activity) {
+        if(!enabled || activity.getUserId() == null){
+            return Mono.empty();
+        }
+        String userId = activity.getUserId();
+        return Mono.defer(() -> Mono.justOrEmpty(hotStats.getIfPresent(userId))
+                        .switchIfEmpty(reactiveMongoTemplate.findById(userId, UserTrainingStats.class))
+                        .defaultIfEmpty(new UserTrainingStats(userId)))
+                .flatMap(current -> {
+                    if(activity.getId() != null && current.getRecentActivityIds().contains(activity.getId())){
+                        return Mono.just(current);
+                    }
+                    UserTrainingStats updated = current.copy();
+                    apply(updated, activity);
+                    return reactiveMongoTemplate.save(updated)
+                            .doOnNext(saved -> updates.increment());
+                })
+                .doOnNext(saved -> hotStats.put(userId, saved))
+                .doOnError(this::isConflict, e -> {
+                    conflicts.increment();
+                    hotStats.invalidate(userId);
+                })
+                .retryWhen(Retry.max(maxRetries).filter(this::isConflict))
+                .then();
+    }
+
+    private boolean isConflict(Throwable e) {
+        return e instanceof OptimisticLockingFailureException || e instanceof DuplicateKeyException;
+    }
+
+    private void apply(UserTrainingStats stats, Activity activity) {
+        String type = activity.getType() == null ? "OTHER" : activity.getType().toUpperCase(Locale.ROOT);
+        int minutes = activity.getDuration() == null ? 0 : activity.getDuration();
+        int calories = activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned();
+        LocalDateTime at = activity.getStartTime() != null ? activity.getStartTime()
+                : activity.getCreatedAt() != null ? activity.getCreatedAt() : LocalDateTime.now();
+
+        UserTrainingStats.TypeStats typeStats = stats.getByType().computeIfAbsent(type, t -> new UserTrainingStats.TypeStats());
+        typeStats.setCount(typeStats.getCount() + 1);
+        typeStats.setTotalMinutes(typeStats.getTotalMinutes() + minutes);
+        typeStats.setTotalCalories(typeStats.getTotalCalories() + calories);
+        if(typeStats.getLongestMinutes() == null || minutes > typeStats.getLongestMinutes()){
+            typeStats.setLongestMinutes(minutes);
+        }
+        if(typeStats.getMostCalories() == null || calories > typeStats.getMostCalories()){
+            typeStats.setMostCalories(calories);
+        }
+        if(typeStats.getLastActivityAt() == null || at.isAfter(typeStats.getLastActivityAt())){
+            typeStats.setLastActivityAt(at);
+        }
+
+        OptionalDouble pace = ActivityMetrics.paceMinPerKm(activity);
+        if(pace.isPresent()){
+            double value = pace.getAsDouble();
+            typeStats.setPaceEmaShort(ema(typeStats.getPaceEmaShort(), value, SHORT_SMOOTHING));
+            typeStats.setPaceEmaLong(ema(typeStats.getPaceEmaLong(), value, LONG_SMOOTHING));
+            if(typeStats.getBestPaceMinPerKm() == null || value < typeStats.getBestPaceMinPerKm()){
+                typeStats.setBestPaceMinPerKm(value);
+            }
+        }
+        OptionalDouble heartRate = ActivityMetrics.heartRate(activity);
+        if(heartRate.isPresent()){
+            typeStats.setHeartRateEmaShort(ema(typeStats.getHeartRateEmaShort(), heartRate.getAsDouble(), SHORT_SMOOTHING));
+            typeStats.setHeartRateEmaLong(ema(typeStats.getHeartRateEmaLong(), heartRate.getAsDouble(), LONG_SMOOTHING));
+        }
+        OptionalDouble distance = ActivityMetrics.distanceKm(activity);
+        if(distance.isPresent() && (typeStats.getLongestDistanceKm() == null || distance.getAsDouble() > typeStats.getLongestDistanceKm())){
+            typeStats.setLongestDistanceKm(distance.getAsDouble());
+        }
+
+        addToWeek(stats.getWeeklyVolume(), weekOf(at), minutes, calories);
+
+        if(activity.getId() != null){
+            List<String> ids = stats.getRecentActivityIds();
+            ids.add(activity.getId());
+            if(ids.size() > recentActivityIds){
+                ids.subList(0, ids.size() - recentActivityIds).clear();
+            }
+        }
+        stats.setUpdatedAt(LocalDateTime.now());
+    }
+
+    private void addToWeek(List<UserTrainingStats.WeeklyVolume> weeklyVolume, String week, int minutes, int calories) {
+        UserTrainingStats.WeeklyVolume volume = weeklyVolume.stream()
+                .filter(w -> week.equals(w.getWeek()))
+                .findFirst()
+                .orElse(null);
+        if(volume == null){
+            if(weeklyVolume.size() >= weeks && week.compareTo(weeklyVolume.get(0).getWeek()) < 0){
+                return;
+            }
+            volume = new UserTrainingStats.WeeklyVolume(week);
+            weeklyVolume.add(volume);
+            weeklyVolume.sort(Comparator.comparing(UserTrainingStats.WeeklyVolume::getWeek));
+            if(weeklyVolume.size() > weeks){
+                weeklyVolume.subList(0, weeklyVolume.size() - weeks).clear();
+            }
+        }
+        volume.setActivities(volume.getActivities() + 1);
+        volume.setMinutes(volume.getMinutes() + minutes);
+        volume.setCalories(volume.getCalories() + calories);
+    }
+
+    private static String weekOf(LocalDateTime at) {
+        return String.format(Locale.ROOT, "%d-W%02d", at.get(IsoFields.WEEK_BASED_YEAR), at.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    private static Double ema(Double current, double value, double smoothing) {
+        return current == null ? value : current + smoothing * (value - current);
+    }
+
+    /**
+     * Compact JSON history for the activity's user, taken from the hot cache only so that prompt
+     * building never waits on Mongo. Covers the activity's own type, counts of other types and
+     * the last few weeks of volume.
+     */
+    public Optional<String> summary(Activity activity) {
+        if(!enabled || activity.getUserId() == null){
+            return Optional.empty();
+        }
+        UserTrainingStats stats = hotStats.getIfPresent(activity.getUserId());
+        if(stats == null || stats.getByType().isEmpty()){
+            return Optional.empty();
+        }
+        String type = activity.getType() == null ? "OTHER" : activity.getType().toUpperCase(Locale.ROOT);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        UserTrainingStats.TypeStats typeStats = stats.getByType().get(type);
+        if(typeStats != null && typeStats.getCount() > 0){
+            summary.put(type, typeSummary(typeStats));
+        }
+        Map<String, Long> otherTypes = new LinkedHashMap<>();
+        stats.getByType().forEach((other, s) -> {
+            if(!other.equals(type)){
+                otherTypes.put(other, s.getCount());
+            }
+        });
+        if(!otherTypes.isEmpty()){
+            summary.put("otherActivities", otherTypes);
+        }
+        List<UserTrainingStats.WeeklyVolume> weekly = stats.getWeeklyVolume();
+        summary.put("weeklyVolume", weekly.subList(Math.max(0, weekly.size() - SUMMARY_WEEKS), weekly.size()));
+        try {
+            return Optional.of(MAPPER.writeValueAsString(summary));
+        }
+        catch (JsonProcessingException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Coarse band of the user's history for the activity's type, used to extend the cache
+     * fingerprint: experience on a log2 scale, average minutes in 10 minute steps, recent pace in
+     * half minutes per km, recent heart rate in 10 bpm steps and weekly minutes in hours. Users
+     * whose history lands in the same band share cached recommendations. Empty without history.
+     */
+    public Optional<String> historyBand(Activity activity) {
+        if(!enabled || activity.getUserId() == null){
+            return Optional.empty();
+        }
+        UserTrainingStats stats = hotStats.getIfPresent(activity.getUserId());
+        if(stats == null || stats.getByType().isEmpty()){
+            return Optional.empty();
+        }
+        String type = activity.getType() == null ? "OTHER" : activity.getType().toUpperCase(Locale.ROOT);
+        StringBuilder band = new StringBuilder(type);
+        UserTrainingStats.TypeStats typeStats = stats.getByType().get(type);
+        if(typeStats != null && typeStats.getCount() > 0){
+            band.append("|n").append(64 - Long.numberOfLeadingZeros(typeStats.getCount()))
+                    .append("|m").append(Math.round(typeStats.getTotalMinutes() / (double) typeStats.getCount() / 10));
+            if(typeStats.getPaceEmaShort() != null){
+                band.append("|p").append(Math.round(typeStats.getPaceEmaShort() * 2));
+            }
+            if(typeStats.getHeartRateEmaShort() != null){
+                band.append("|h").append(Math.round(typeStats.getHeartRateEmaShort() / 10));
+            }
+        }
+        List<UserTrainingStats.WeeklyVolume> weekly = stats.getWeeklyVolume();
+        List<UserTrainingStats.WeeklyVolume> recent = weekly.subList(Math.max(0, weekly.size() - SUMMARY_WEEKS), weekly.size());
+        double weeklyMinutes = recent.stream().mapToLong(UserTrainingStats.WeeklyVolume::getMinutes).average().orElse(0);
+        band.append("|w").append(Math.round(weeklyMinutes / 60));
+        return Optional.of(band.toString());
+    }
+
+    private static Map<String, Object> typeSummary(UserTrainingStats.TypeStats stats) {
+        DoubleUnaryOperator round = value -> Math.round(value * 10) / 10.0;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", stats.getCount());
+        summary.put("avgMinutes", round.applyAsDouble((double) stats.getTotalMinutes() / stats.getCount()));
+        summary.put("avgCalories", round.applyAsDouble((double) stats.getTotalCalories() / stats.getCount()));
+        if(stats.getPaceEmaShort() != null){
+            summary.put("recentPaceMinPerKm", round.applyAsDouble(stats.getPaceEmaShort()));
+            summary.put("longTermPaceMinPerKm", round.applyAsDouble(stats.getPaceEmaLong()));
+            summary.put("bestPaceMinPerKm", round.applyAsDouble(stats.getBestPaceMinPerKm()));
+        }
+        if(stats.getHeartRateEmaShort() != null){
+            summary.put("recentHeartRate", Math.round(stats.getHeartRateEmaShort()));
+            summary.put("longTermHeartRate", Math.round(stats.getHeartRateEmaLong()));
+        }
+        if(stats.getLongestDistanceKm() != null){
+            summary.put("longestDistanceKm", round.applyAsDouble(stats.getLongestDistanceKm()));
+        }
+        summary.put("longestMinutes", stats.getLongestMinutes());
+        summary.put("mostCalories", stats.getMostCalories());
+        return summary;
+    }
+}
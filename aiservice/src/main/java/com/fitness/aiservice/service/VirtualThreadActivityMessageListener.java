@@ -0,0 +1,72 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the blocking pipeline for every delivery on its own virtual thread, so a Gemini call that
+ * takes seconds parks a cheap virtual thread instead of holding one of a few consumer threads.
+ * A semaphore caps the activities in flight at {@code ai.pipeline.virtual.max-in-flight}; when it
+ * is exhausted the consumer thread waits for a permit, which stops it taking more deliveries. The
+ * message is acked once the returned future completes.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "ai.pipeline.mode", havingValue = "virtual")
+public class VirtualThreadActivityMessageListener {
+
+    private final RecommendationPipeline recommendationPipeline;
+    private final Semaphore inFlight;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ai-activity-", 0).factory());
+
+    public VirtualThreadActivityMessageListener(RecommendationPipeline recommendationPipeline,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${ai.pipeline.virtual.max-in-flight:200}") int maxInFlight) {
+        this.recommendationPipeline = recommendationPipeline;
+        this.inFlight = new Semaphore(maxInFlight);
+        Gauge.builder("ai.pipeline.in-flight", inFlight, semaphore -> maxInFlight - semaphore.availablePermits())
+                .description("Activities being processed on virtual threads")
+                .register(meterRegistry);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.name}", containerFactory = "virtualListenerContainerFactory")
+    public CompletableFuture<Void> processActivity(Activity activity,
+                                                   @Header(name = ActivityRetryHandler.ATTEMPT_HEADER, required = false) Integer attempt)
+            throws InterruptedException {
+        log.info("Received activity for processing : {} " , activity.getId());
+        inFlight.acquire();
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    recommendationPipeline.processBlocking(activity, attempt == null ? 0 : attempt);
+                }
+                finally {
+                    inFlight.release();
+                }
+            }, executor);
+        }
+        catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+}
@@ -0,0 +1,74 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.aiservice.model.Recommendation;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecommendationIndexesTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final IndexOperations indexOps = mock(IndexOperations.class);
+
+    RecommendationIndexesTest() {
+        when(mongoTemplate.indexOps(Recommendation.class)).thenReturn(indexOps);
+    }
+
+    @Test
+    void duplicatesAreRemovedBeforeTheUniqueIndexIsBuilt() {
+        when(indexOps.getIndexInfo()).thenReturn(List.of());
+        // groups list ids newest first
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(Recommendation.class), eq(Document.class)))
+                .thenReturn(Stream.of(new Document("_id", "a1").append("ids", List.of("r3", "r2", "r1")),
+                        new Document("_id", "a2").append("ids", List.of("r5", "r4"))));
+        when(mongoTemplate.remove(any(Query.class), eq(Recommendation.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        new RecommendationIndexes(mongoTemplate, true).ensureIndexes();
+
+        InOrder order = inOrder(mongoTemplate, indexOps);
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        order.verify(mongoTemplate, times(2)).remove(removed.capture(), eq(Recommendation.class));
+        ArgumentCaptor<Index> index = ArgumentCaptor.forClass(Index.class);
+        order.verify(indexOps).ensureIndex(index.capture());
+
+        assertThat(removed.getAllValues()).extracting(query -> query.getQueryObject().get("_id", Document.class).getList("$in", String.class))
+                .containsExactly(List.of("r2", "r1"), List.of("r4"));
+        assertThat(index.getValue().getIndexKeys()).isEqualTo(new Document("activityId", 1));
+        assertThat(index.getValue().getIndexOptions().getBoolean("unique")).isTrue();
+    }
+
+    @Test
+    void existingUniqueIndexIsLeftAlone() {
+        when(indexOps.getIndexInfo()).thenReturn(List.of(
+                new IndexInfo(List.of(IndexField.create("activityId", Sort.Direction.ASC)),
+                        "activityId", true, false, "")));
+
+        new RecommendationIndexes(mongoTemplate, true).ensureIndexes();
+
+        verify(mongoTemplate, never()).aggregateStream(any(Aggregation.class), eq(Recommendation.class), eq(Document.class));
+        verify(indexOps, never()).ensureIndex(any(Index.class));
+    }
+}
@@ -0,0 +1,91 @@
+package com.fitness.aiservice.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Realistic generateContent responses: a fenced analysis JSON in {@code candidates[0].content.parts[0].text}
+ * surrounded by the safety ratings, citation and usage metadata Gemini sends back.
+ */
+public final class GeminiPayloads {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private GeminiPayloads() {
+    }
+
+    public static String response(int items) {
+        return envelope("```json\n" + analysis(items, null) + "\n```");
+    }
+
+    public static String analysis(int items, String activityId) {
+        Map<String, Object> analysis = new LinkedHashMap<>();
+        if(activityId != null){
+            analysis.put("activityId", activityId);
+        }
+        analysis.put("analysis", Map.of(
+                "overall", "Solid aerobic session with a consistent effort across the whole workout. "
+                        + "The duration and intensity are well matched to a base building phase.",
+                "pace", "Pace was steady at around 5:45 min/km with a slight fade in the final kilometre, "
+                        + "which suggests pacing was close to but slightly above current threshold.",
+                "heartRate", "Average heart rate of 152 bpm places most of the session in zone 3, "
+                        + "with short excursions into zone 4 on the climbs.",
+                "caloriesBurned", "Roughly 300 kcal, consistent with the duration and body mass provided."));
+        List<Map<String, String>> improvements = new ArrayList<>();
+        List<Map<String, String>> suggestions = new ArrayList<>();
+        List<String> safety = new ArrayList<>();
+        for(int i = 0; i < items; i++){
+            improvements.add(Map.of(
+                    "area", "Improvement area " + i,
+                    "recommendation", "Spend the first ten minutes in zone 2 and build gradually so that the "
+                            + "final third of the session can be held at target pace without fading."));
+            suggestions.add(Map.of(
+                    "workout", "Workout " + i,
+                    "description", "6 x 800m at 5K pace with 90 seconds of easy jogging between repetitions, "
+                            + "preceded by a 15 minute warm up and followed by a 10 minute cool down."));
+            safety.add("Safety point " + i + ": hydrate before and after the session and stop if you feel dizzy.");
+        }
+        analysis.put("improvements", improvements);
+        analysis.put("suggestions", suggestions);
+        analysis.put("safety", safety);
+        return write(analysis);
+    }
+
+    public static String envelope(String text) {
+        List<Map<String, String>> safetyRatings = new ArrayList<>();
+        for(String category : List.of("HARM_CATEGORY_HATE_SPEECH", "HARM_CATEGORY_DANGEROUS_CONTENT",
+                "HARM_CATEGORY_HARASSMENT", "HARM_CATEGORY_SEXUALLY_EXPLICIT")){
+            safetyRatings.add(Map.of("category", category, "probability", "NEGLIGIBLE"));
+        }
+        Map<String, Object> candidate = new LinkedHashMap<>();
+        candidate.put("content", Map.of(
+                "parts", List.of(Map.of("text", text)),
+                "role", "model"));
+        candidate.put("finishReason", "STOP");
+        candidate.put("safetyRatings", safetyRatings);
+        candidate.put("avgLogprobs", -0.2154);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("candidates", List.of(candidate));
+        response.put("usageMetadata", Map.of(
+                "promptTokenCount", 312,
+                "candidatesTokenCount", text.length() / 4,
+                "totalTokenCount", 312 + text.length() / 4));
+        response.put("modelVersion", "gemini-2.0-flash");
+        return write(response);
+    }
+
+    private static String write(Object value) {
+        try {
+            return MAPPER.writeValueAsString(value);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.fitness.aiservice.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Offline stand-in for the Gemini {@code generateContent} endpoint, so the AI pipeline can be
+ * load tested without spending quota. Every POST is answered after a log-normally distributed
+ * delay, defined by its median and p99, with a realistic envelope carrying a fenced analysis JSON
+ * in {@code candidates[0].content.parts[0].text}. Batched prompts get one array entry per
+ * {@code Activity Id}. A configurable share of calls fails with 500, and periodic windows answer
+ * 429 to mimic quota bursts.
+ *
+ * <p>Point aiservice at it with
+ * {@code GEMINI_API_URL=http://localhost:8089/v1beta/models/gemini-2.0-flash:generateContent}
+ * and any {@code GEMINI_API_KEY}. Standalone:
+ * {@code mvn -Ploadtest test-compile exec:exec -Dloadtest.main=com.fitness.aiservice.loadtest.GeminiStandInServer
+ * -Dloadtest.args="--port=8089 --median-latency=1500ms --p99-latency=8s --error-rate=0.01"}.
+ */
+public class GeminiStandInServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern ACTIVITY_ID = Pattern.compile("Activity Id: (\\S+)");
+
+    private final HttpServer server;
+    private final Duration medianLatency;
+    private final double sigma;
+    private final double errorRate;
+    private final Duration throttleEvery;
+    private final Duration throttleFor;
+    private final long startedAt = System.nanoTime();
+    private final String singleResponse = GeminiPayloads.response(3);
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    /**
+     * @param throttleEvery period of the 429 windows, {@link Duration#ZERO} to disable them
+     * @param throttleFor   length of each 429 window at the start of every period
+     */
+    public GeminiStandInServer(int port, Duration medianLatency, Duration p99Latency, double errorRate,
+                               Duration throttleEvery, Duration throttleFor) throws IOException {
+        this.medianLatency = medianLatency;
+        // p99 of a log-normal distribution is median * e^(2.326 sigma)
+        this.sigma = Math.log(Math.max(p99Latency.toNanos(), medianLatency.toNanos() + 1) / (double) Math.max(medianLatency.toNanos(), 1)) / 2.326;
+        this.errorRate = errorRate;
+        this.throttleEvery = throttleEvery;
+        this.throttleFor = throttleFor;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/", this::handle);
+    }
+
+    public GeminiStandInServer start() {
+        server.start();
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public String url() {
+        return "http://localhost:" + port() + "/v1beta/models/gemini-2.0-flash:generateContent";
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public long throttled() {
+        return throttled.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            String prompt = MAPPER.readTree(exchange.getRequestBody())
+                    .path("contents").path(0).path("parts").path(0).path("text").asText();
+            if(inThrottleWindow()){
+                throttled.incrementAndGet();
+                respond(exchange, 429, "{\"error\":{\"code\":429,\"message\":\"Resource has been exhausted (e.g. check quota).\",\"status\":\"RESOURCE_EXHAUSTED\"}}");
+                return;
+            }
+            Thread.sleep(sampleLatency());
+            if(ThreadLocalRandom.current().nextDouble() < errorRate){
+                errors.incrementAndGet();
+                respond(exchange, 500, "{\"error\":{\"code\":500,\"message\":\"An internal error has occurred.\",\"status\":\"INTERNAL\"}}");
+                return;
+            }
+            respond(exchange, 200, responseFor(prompt));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean inThrottleWindow() {
+        if(throttleEvery.isZero() || throttleFor.isZero()){
+            return false;
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        return elapsed % throttleEvery.toNanos() < throttleFor.toNanos();
+    }
+
+    private Duration sampleLatency() {
+        double factor = Math.exp(sigma * ThreadLocalRandom.current().nextGaussian());
+        return Duration.ofNanos((long) (medianLatency.toNanos() * factor));
+    }
+
+    private String responseFor(String prompt) {
+        Matcher matcher = ACTIVITY_ID.matcher(prompt);
+        List<String> entries = new ArrayList<>();
+        while(matcher.find()){
+            entries.add(GeminiPayloads.analysis(3, matcher.group(1)));
+        }
+        if(entries.isEmpty()){
+            return singleResponse;
+        }
+        return GeminiPayloads.envelope("```json\n[" + String.join(",", entries) + "]\n```");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadTestOptions.parse(args);
+        GeminiStandInServer server = new GeminiStandInServer(
+                LoadTestOptions.intValue(options, "port", 8089),
+                LoadTestOptions.duration(options, "median-latency", Duration.ofMillis(1500)),
+                LoadTestOptions.duration(options, "p99-latency", Duration.ofSeconds(8)),
+                LoadTestOptions.doubleValue(options, "error-rate", 0.01),
+                LoadTestOptions.duration(options, "throttle-every", Duration.ZERO),
+                LoadTestOptions.duration(options, "throttle-for", Duration.ZERO)).start();
+        System.out.printf("Gemini stand-in listening on %s%n", server.url());
+        while(!Thread.currentThread().isInterrupted()){
+            Thread.sleep(10_000);
+            System.out.printf("requests=%d errors=%d throttled=%d%n", server.requests(), server.errors(), server.throttled());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.fitness.aiservice.loadtest;
+
+import com.fitness.aiservice.config.GeminiClientConfig;
+import com.fitness.aiservice.service.GeminiHedgingPolicy;
+import com.fitness.aiservice.service.GeminiRateLimiter;
+import com.fitness.aiservice.service.GeminiService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the two ways the blocking pipeline can be driven by the listener container, using the
+ * real {@link GeminiService} against an in-process {@link GeminiStandInServer} and no broker:
+ * <ul>
+ *     <li>platform: a fixed pool of consumer threads, each blocked for the whole Gemini call, as
+ *     with {@code ai.pipeline.mode=blocking} and {@code rabbitmq.listener.max-concurrency};</li>
+ *     <li>virtual: one consumer thread handing each delivery to a virtual thread behind a
+ *     semaphore, as with {@code ai.pipeline.mode=virtual} and {@code ai.pipeline.virtual.max-in-flight}.</li>
+ * </ul>
+ * All messages are queued up front, so the reported latency includes time waiting for a consumer.
+ *
+ * <p>{@code mvn -Ploadtest test-compile exec:exec -Dloadtest.main=com.fitness.aiservice.loadtest.ListenerThreadingBenchmark
+ * -Dloadtest.args="--messages=1000 --platform-threads=4,64 --max-in-flight=200"}. Options:
+ * {@code --messages --platform-threads --max-in-flight --max-connections --save-latency} plus the stand-in options
+ * {@code --median-latency --p99-latency --error-rate}.
+ */
+public class ListenerThreadingBenchmark {
+
+    private final GeminiService geminiService;
+    private final Duration saveLatency;
+    private final AtomicLong failures = new AtomicLong();
+
+    private ListenerThreadingBenchmark(GeminiService geminiService, Duration saveLatency) {
+        this.geminiService = geminiService;
+        this.saveLatency = saveLatency;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadTestOptions.parse(args);
+        int messages = LoadTestOptions.intValue(options, "messages", 1000);
+        int maxInFlight = LoadTestOptions.intValue(options, "max-in-flight", 200);
+        Duration saveLatency = LoadTestOptions.duration(options, "save-latency", Duration.ofMillis(5));
+
+        try (GeminiStandInServer standIn = new GeminiStandInServer(0,
+                LoadTestOptions.duration(options, "median-latency", Duration.ofMillis(800)),
+                LoadTestOptions.duration(options, "p99-latency", Duration.ofSeconds(3)),
+                LoadTestOptions.doubleValue(options, "error-rate", 0),
+                Duration.ZERO, Duration.ZERO).start()) {
+            GeminiService geminiService = geminiService(standIn.url(), LoadTestOptions.intValue(options, "max-connections", 200));
+            ListenerThreadingBenchmark benchmark = new ListenerThreadingBenchmark(geminiService, saveLatency);
+
+            benchmark.runVirtual(Math.min(messages, 20), maxInFlight);
+            System.out.printf("%-28s %10s %10s %10s %10s %12s%n", "mode", "msg/s", "p50 ms", "p99 ms", "failed", "peak threads");
+            for(String threads : LoadTestOptions.string(options, "platform-threads", "4,64").split(",")){
+                int count = Integer.parseInt(threads.trim());
+                benchmark.report("platform (" + count + " threads)", messages, () -> benchmark.runPlatform(messages, count));
+            }
+            benchmark.report("virtual (" + maxInFlight + " in flight)", messages, () -> benchmark.runVirtual(messages, maxInFlight));
+        }
+    }
+
+    private static GeminiService geminiService(String url, int maxConnections) {
+        GeminiRateLimiter disabled = new GeminiRateLimiter(new SimpleMeterRegistry(), false, 1000, 1_000_000,
+                Duration.ofSeconds(10), 800, 1000, Duration.ofSeconds(30), 20, 1, 200, 0.5,
+                Duration.ofSeconds(30), Duration.ofSeconds(1));
+        GeminiClientConfig clientConfig = new GeminiClientConfig();
+        ConnectionProvider connectionProvider = clientConfig.geminiConnectionProvider(maxConnections, 10_000,
+                Duration.ofSeconds(45), Duration.ofSeconds(30), Duration.ofMinutes(5));
+        WebClient webClient = clientConfig.geminiWebClient(WebClient.builder(), connectionProvider, url, "benchmark", true,
+                Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(60), DataSize.ofMegabytes(2));
+        GeminiHedgingPolicy noHedging = new GeminiHedgingPolicy(new SimpleMeterRegistry(), false, 0.95,
+                Duration.ofMillis(500), 1000, 50, 0.05, 10);
+        return new GeminiService(webClient, disabled, noHedging, new SimpleMeterRegistry(), url);
+    }
+
+    private interface Run {
+        List<Long> execute() throws Exception;
+    }
+
+    private void report(String mode, int messages, Run run) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        failures.set(0);
+        long start = System.nanoTime();
+        List<Long> latencies = run.execute();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Collections.sort(latencies);
+        System.out.printf("%-28s %10.1f %10d %10d %10d %12d%n", mode, messages / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), failures.get(), threads.getPeakThreadCount());
+    }
+
+    private List<Long> runPlatform(int messages, int threads) throws InterruptedException {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(messages));
+        ExecutorService consumers = Executors.newFixedThreadPool(threads);
+        long queuedAt = System.nanoTime();
+        for(int i = 0; i < messages; i++){
+            String id = "platform-" + i;
+            consumers.execute(() -> latencies.add(handle(id, queuedAt)));
+        }
+        consumers.shutdown();
+        consumers.awaitTermination(1, TimeUnit.HOURS);
+        return new ArrayList<>(latencies);
+    }
+
+    private List<Long> runVirtual(int messages, int maxInFlight) throws InterruptedException {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(messages));
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(messages);
+        long queuedAt = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(int i = 0; i < messages; i++){
+                String id = "virtual-" + i;
+                inFlight.acquire();
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        latencies.add(handle(id, queuedAt));
+                    }
+                    finally {
+                        inFlight.release();
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+        return new ArrayList<>(latencies);
+    }
+
+    /**
+     * What the listener does per delivery, minus Mongo: one blocking Gemini call, then a short
+     * sleep standing in for the save.
+     */
+    private long handle(String activityId, long queuedAt) {
+        try {
+            geminiService.getAnswers("Analyze this fitness activity\n  - Activity Id: " + activityId + "\n");
+            Thread.sleep(saveLatency);
+        }
+        catch (Exception e) {
+            failures.incrementAndGet();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedAt);
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        if(sorted.isEmpty()){
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.clamp(index, 0, sorted.size() - 1));
+    }
+}
@@ -0,0 +1,55 @@
+package com.fitness.aiservice.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code --name=value} command line options for the load test tools. Durations accept
+ * {@code ms}, {@code s} and {@code m} suffixes.
+ */
+final class LoadTestOptions {
+
+    private LoadTestOptions() {
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args){
+            if(arg.startsWith("--") && arg.contains("=")){
+                int separator = arg.indexOf('=');
+                options.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    static String string(Map<String, String> options, String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    static int intValue(Map<String, String> options, String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    static double doubleValue(Map<String, String> options, String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+    static Duration duration(Map<String, String> options, String name, Duration defaultValue) {
+        String value = options.get(name);
+        if(value == null){
+            return defaultValue;
+        }
+        if(value.endsWith("ms")){
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if(value.endsWith("s")){
+            return Duration.ofMillis((long) (Double.parseDouble(value.substring(0, value.length() - 1)) * 1000));
+        }
+        if(value.endsWith("m")){
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)) * 60);
+        }
+        return Duration.ofMillis(Long.parseLong(value));
+    }
+}
@@ -0,0 +1,235 @@
+package com.fitness.aiservice.loadtest;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end throughput harness for aiservice. Publishes synthetic {@code Activity} messages to the
+ * activity exchange at a fixed rate, watches the recommendations collection for the matching
+ * documents and reports consumed messages/sec, p50/p99 latency from publish to stored
+ * recommendation, and the Mongo write rate taken from the server's {@code opcounters}, which counts every
+ * insert, update and delete the server ran (recommendations, cache entries, training stats) rather
+ * than only the recommendations seen by the harness.
+ *
+ * <p>Start aiservice against the {@link GeminiStandInServer} (started in-process by default), then run
+ * {@code mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--rate=50 --duration=60s"}.
+ * Options: {@code --rabbit-host --rabbit-port --rabbit-user --rabbit-password --exchange --routing-key
+ * --mongo-uri --mongo-database --rate --duration --drain-timeout --unique-metrics --start-stand-in}
+ * plus the stand-in options {@code --port --median-latency --p99-latency --error-rate --throttle-every --throttle-for}.
+ */
+public class ThroughputHarness {
+
+    private static final String[] TYPES = {"RUNNING", "WALKING", "CYCLING", "SWIMMING", "WEIGHT_TRAINING", "YOGA", "HIIT"};
+
+    private final Map<String, Long> published = new ConcurrentHashMap<>();
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong lastCompletionAt = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        new ThroughputHarness().run(LoadTestOptions.parse(args));
+    }
+
+    private void run(Map<String, String> options) throws Exception {
+        GeminiStandInServer standIn = null;
+        if(Boolean.parseBoolean(LoadTestOptions.string(options, "start-stand-in", "true"))){
+            standIn = new GeminiStandInServer(
+                    LoadTestOptions.intValue(options, "port", 8089),
+                    LoadTestOptions.duration(options, "median-latency", Duration.ofMillis(1500)),
+                    LoadTestOptions.duration(options, "p99-latency", Duration.ofSeconds(8)),
+                    LoadTestOptions.doubleValue(options, "error-rate", 0.01),
+                    LoadTestOptions.duration(options, "throttle-every", Duration.ZERO),
+                    LoadTestOptions.duration(options, "throttle-for", Duration.ZERO)).start();
+            System.out.printf("Gemini stand-in listening on %s%n", standIn.url());
+        }
+
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(
+                LoadTestOptions.string(options, "rabbit-host", "localhost"),
+                LoadTestOptions.intValue(options, "rabbit-port", 5672));
+        connectionFactory.setUsername(LoadTestOptions.string(options, "rabbit-user", "guest"));
+        connectionFactory.setPassword(LoadTestOptions.string(options, "rabbit-password", "guest"));
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(new Jackson2JsonMessageConverter());
+        String exchange = LoadTestOptions.string(options, "exchange", "fitness.exchange");
+        String routingKey = LoadTestOptions.string(options, "routing-key", "activity.tracking");
+
+        double rate = LoadTestOptions.doubleValue(options, "rate", 20);
+        Duration duration = LoadTestOptions.duration(options, "duration", Duration.ofSeconds(60));
+        Duration drainTimeout = LoadTestOptions.duration(options, "drain-timeout", Duration.ofSeconds(120));
+        boolean uniqueMetrics = Boolean.parseBoolean(LoadTestOptions.string(options, "unique-metrics", "true"));
+
+        try (MongoClient mongoClient = MongoClients.create(LoadTestOptions.string(options, "mongo-uri", "mongodb://localhost:27017"))) {
+            MongoCollection<Document> recommendations = mongoClient
+                    .getDatabase(LoadTestOptions.string(options, "mongo-database", "fitnessrecommendation"))
+                    .getCollection("recommendations");
+
+            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+            scheduler.scheduleWithFixedDelay(() -> poll(recommendations), 250, 250, TimeUnit.MILLISECONDS);
+            long writesAtStart = writeOps(mongoClient);
+            AtomicLong lastWrites = new AtomicLong(writesAtStart);
+            scheduler.scheduleAtFixedRate(() -> {
+                long writes = writeOps(mongoClient);
+                long previous = lastWrites.getAndSet(writes);
+                System.out.printf("published=%d completed=%d pending=%d mongoWrites/s=%s%n",
+                        publishedCount.get(), completedCount.get(), published.size(),
+                        writes < 0 || previous < 0 ? "n/a" : String.format("%.1f", (writes - previous) / 5.0));
+            }, 5, 5, TimeUnit.SECONDS);
+
+            long startedAt = System.currentTimeMillis();
+            publish(rabbitTemplate, exchange, routingKey, rate, duration, uniqueMetrics);
+            long publishedAt = System.currentTimeMillis();
+
+            long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+            while(!published.isEmpty() && System.nanoTime() < drainDeadline){
+                Thread.sleep(250);
+            }
+            scheduler.shutdownNow();
+            long writesAtEnd = writeOps(mongoClient);
+            report(startedAt, publishedAt, writesAtStart < 0 || writesAtEnd < 0 ? -1 : writesAtEnd - writesAtStart);
+        }
+        finally {
+            connectionFactory.destroy();
+            if(standIn != null){
+                System.out.printf("stand-in requests=%d errors=%d throttled=%d%n", standIn.requests(), standIn.errors(), standIn.throttled());
+                standIn.close();
+            }
+        }
+    }
+
+    private void publish(RabbitTemplate rabbitTemplate, String exchange, String routingKey,
+                         double rate, Duration duration, boolean uniqueMetrics) {
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long end = System.nanoTime() + duration.toNanos();
+        long next = System.nanoTime();
+        while(next < end){
+            Map<String, Object> activity = syntheticActivity(uniqueMetrics);
+            String id = (String) activity.get("id");
+            published.put(id, System.currentTimeMillis());
+            rabbitTemplate.convertAndSend(exchange, routingKey, activity);
+            publishedCount.incrementAndGet();
+            next += periodNanos;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    private Map<String, Object> syntheticActivity(boolean uniqueMetrics) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String now = LocalDateTime.now().toString();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("distance", Math.round(random.nextDouble(1, 20) * 100) / 100.0);
+        metrics.put("averageHeartRate", random.nextInt(100, 175));
+        metrics.put("maxHeartRate", random.nextInt(150, 195));
+        if(uniqueMetrics){
+            metrics.put("sessionId", new ObjectId().toHexString());
+        }
+        Map<String, Object> activity = new LinkedHashMap<>();
+        activity.put("id", new ObjectId().toHexString());
+        activity.put("userId", "loadtest-user-" + random.nextInt(1000));
+        activity.put("type", TYPES[random.nextInt(TYPES.length)]);
+        activity.put("duration", random.nextInt(10, 120));
+        activity.put("caloriesBurned", random.nextInt(50, 1000));
+        activity.put("startTime", now);
+        activity.put("additionalMetrics", metrics);
+        activity.put("createdAt", now);
+        activity.put("updatedAt", now);
+        return activity;
+    }
+
+    private void poll(MongoCollection<Document> recommendations) {
+        try {
+            List<String> pending = new ArrayList<>(published.keySet());
+            for(int from = 0; from < pending.size(); from += 1000){
+                List<String> chunk = pending.subList(from, Math.min(pending.size(), from + 1000));
+                for(Document document : recommendations.find(Filters.in("activityId", chunk))
+                        .projection(Projections.include("activityId", "createdAt"))){
+                    Long publishedAt = published.remove(document.getString("activityId"));
+                    if(publishedAt == null){
+                        continue;
+                    }
+                    Date createdAt = document.getDate("createdAt");
+                    long storedAt = createdAt != null ? createdAt.getTime() : System.currentTimeMillis();
+                    latencies.add(Math.max(0, storedAt - publishedAt));
+                    completedCount.incrementAndGet();
+                    lastCompletionAt.accumulateAndGet(storedAt, Math::max);
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            System.err.printf("Polling recommendations failed : %s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * Inserts, updates and deletes run by the server since it started, or -1 when serverStatus is
+     * not allowed for the harness user.
+     */
+    private static long writeOps(MongoClient mongoClient) {
+        try {
+            Document opcounters = mongoClient.getDatabase("admin")
+                    .runCommand(new Document("serverStatus", 1))
+                    .get("opcounters", Document.class);
+            return ((Number) opcounters.get("insert")).longValue()
+                    + ((Number) opcounters.get("update")).longValue()
+                    + ((Number) opcounters.get("delete")).longValue();
+        }
+        catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private void report(long startedAt, long publishedAt, long writes) {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        Collections.sort(sorted);
+        long completed = completedCount.get();
+        double publishSeconds = Math.max(1, publishedAt - startedAt) / 1000.0;
+        double consumeSeconds = Math.max(1, lastCompletionAt.get() - startedAt) / 1000.0;
+        System.out.println("---- aiservice throughput ----");
+        System.out.printf("published            %d (%.1f msg/s)%n", publishedCount.get(), publishedCount.get() / publishSeconds);
+        System.out.printf("completed            %d (%.1f msg/s)%n", completed, completed / consumeSeconds);
+        System.out.printf("not completed        %d%n", published.size());
+        if(writes >= 0){
+            System.out.printf("mongo writes         %d (%.1f ops/s)%n", writes, writes / consumeSeconds);
+        }
+        else {
+            System.out.println("mongo writes         n/a (serverStatus not permitted)");
+        }
+        if(!sorted.isEmpty()){
+            System.out.printf("latency p50          %d ms%n", percentile(sorted, 0.50));
+            System.out.printf("latency p99          %d ms%n", percentile(sorted, 0.99));
+            System.out.printf("latency max          %d ms%n", sorted.get(sorted.size() - 1));
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.clamp(index, 0, sorted.size() - 1));
+    }
+}
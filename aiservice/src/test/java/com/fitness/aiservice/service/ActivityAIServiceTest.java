@@ -0,0 +1,114 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.loadtest.GeminiPayloads;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.CachedRecommendation;
+import com.fitness.aiservice.model.UserTrainingStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActivityAIServiceTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+    private final GeminiService geminiService = mock(GeminiService.class);
+    private final RecommendationBatcher recommendationBatcher = mock(RecommendationBatcher.class);
+    private final PromptBuilder promptBuilder = mock(PromptBuilder.class);
+    private final UserTrainingStatsService userTrainingStatsService = new UserTrainingStatsService(reactiveMongoTemplate,
+            meterRegistry, true, 100, Duration.ofHours(1), 8, 50, 5);
+    private final ActivityAIService aiService;
+
+    ActivityAIServiceTest() {
+        ActivityFingerprint activityFingerprint = new ActivityFingerprint();
+        ReflectionTestUtils.setField(activityFingerprint, "durationBucketMinutes", 5);
+        ReflectionTestUtils.setField(activityFingerprint, "caloriesBucket", 50);
+        ReflectionTestUtils.setField(activityFingerprint, "metricSignificantDigits", 2);
+        RecommendationCache recommendationCache = new RecommendationCache(reactiveMongoTemplate, meterRegistry, true,
+                100, Duration.ofHours(1), Duration.ofDays(7));
+        aiService = new ActivityAIService(geminiService, activityFingerprint, recommendationCache, recommendationBatcher,
+                new GeminiResponseParser(), promptBuilder, mock(RecommendationRouter.class),
+                mock(LocalRecommendationEngine.class), new RecommendationMetrics(meterRegistry), userTrainingStatsService);
+
+        when(reactiveMongoTemplate.findById(anyString(), eq(CachedRecommendation.class))).thenReturn(Mono.empty());
+        when(reactiveMongoTemplate.save(any(CachedRecommendation.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(reactiveMongoTemplate.findById(anyString(), eq(UserTrainingStats.class))).thenReturn(Mono.empty());
+        when(promptBuilder.buildPrompt(any(Activity.class))).thenReturn("prompt");
+        when(geminiService.getAnswersAsync("prompt")).thenAnswer(invocation -> Mono.just(GeminiPayloads.response(1)));
+    }
+
+    private static Activity run(String id, String userId) {
+        Activity activity = new Activity();
+        activity.setId(id);
+        activity.setUserId(userId);
+        activity.setType("RUNNING");
+        activity.setDuration(32);
+        activity.setCaloriesBurned(340);
+        return activity;
+    }
+
+    private void history(String userId, long runs, double recentPace, long weeklyMinutes) {
+        UserTrainingStats stats = new UserTrainingStats(userId);
+        UserTrainingStats.TypeStats running = new UserTrainingStats.TypeStats();
+        running.setCount(runs);
+        running.setTotalMinutes(runs * 30);
+        running.setPaceEmaShort(recentPace);
+        running.setPaceEmaLong(recentPace);
+        running.setBestPaceMinPerKm(recentPace);
+        stats.getByType().put("RUNNING", running);
+        UserTrainingStats.WeeklyVolume week = new UserTrainingStats.WeeklyVolume("2025-W10");
+        week.setMinutes(weeklyMinutes);
+        stats.getWeeklyVolume().add(week);
+        when(reactiveMongoTemplate.findById(userId, UserTrainingStats.class)).thenReturn(Mono.just(stats));
+        userTrainingStatsService.load(userId).block();
+    }
+
+    private void generate(Activity activity) {
+        StepVerifier.create(aiService.generateRecommendationAsync(activity)).expectNextCount(1).verifyComplete();
+    }
+
+    @Test
+    void returningUsersWithSimilarHistoryShareTheCache() {
+        history("user-1", 12, 5.42, 180);
+        history("user-2", 13, 5.38, 200);
+
+        generate(run("a1", "user-1"));
+        generate(run("a2", "user-2"));
+
+        verify(geminiService, times(1)).getAnswersAsync("prompt");
+    }
+
+    @Test
+    void usersWithDifferentHistoryDoNotShareTheCache() {
+        history("user-1", 12, 5.42, 180);
+        history("user-2", 12, 7.0, 180);
+
+        generate(run("a1", "user-1"));
+        generate(run("a2", "user-2"));
+        generate(run("a3", "user-3"));
+
+        verify(geminiService, times(3)).getAnswersAsync("prompt");
+    }
+
+    @Test
+    void usersWithoutHistoryShareThePlainFingerprint() {
+        generate(run("a1", "user-1"));
+        generate(run("a2", "user-2"));
+
+        verify(geminiService, times(1)).getAnswersAsync("prompt");
+    }
+}
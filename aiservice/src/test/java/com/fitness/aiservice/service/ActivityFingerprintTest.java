@@ -0,0 +1,88 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ActivityFingerprintTest {
+
+    private final ActivityFingerprint fingerprint = new ActivityFingerprint();
+
+    ActivityFingerprintTest() {
+        ReflectionTestUtils.setField(fingerprint, "durationBucketMinutes", 5);
+        ReflectionTestUtils.setField(fingerprint, "caloriesBucket", 50);
+        ReflectionTestUtils.setField(fingerprint, "metricSignificantDigits", 2);
+    }
+
+    private static Activity activity(String type, Integer duration, Integer calories, Map<String, Object> metrics) {
+        Activity activity = new Activity();
+        activity.setId("a1");
+        activity.setUserId("user-1");
+        activity.setType(type);
+        activity.setDuration(duration);
+        activity.setCaloriesBurned(calories);
+        activity.setAdditionalMetrics(metrics);
+        return activity;
+    }
+
+    private String of(Integer duration, Integer calories) {
+        return fingerprint.of(activity("RUNNING", duration, calories, null));
+    }
+
+    private String of(Map<String, Object> metrics) {
+        return fingerprint.of(activity("RUNNING", 30, 300, metrics));
+    }
+
+    @Test
+    void durationAndCaloriesAreRoundedToTheNearestBucket() {
+        // 5 minute buckets round half up: 32.4 -> 6, 32.5 -> 7
+        assertThat(of(28, 300)).isEqualTo(of(32, 300));
+        assertThat(of(32, 300)).isNotEqualTo(of(33, 300));
+        // 50 calorie buckets: 324 -> 6, 325 -> 7
+        assertThat(of(30, 276)).isEqualTo(of(30, 324));
+        assertThat(of(30, 324)).isNotEqualTo(of(30, 325));
+        assertThat(of(null, 300)).isNotEqualTo(of(0, 300));
+    }
+
+    @Test
+    void metricsAreRoundedToSignificantDigits() {
+        assertThat(of(Map.of("heartRate", 152))).isEqualTo(of(Map.of("heartRate", 154.9)));
+        assertThat(of(Map.of("heartRate", 154.9))).isNotEqualTo(of(Map.of("heartRate", 155)));
+        assertThat(of(Map.of("distance", 5.04))).isEqualTo(of(Map.of("distance", 5.0)));
+        assertThat(of(Map.of("distance", Double.NaN))).isEqualTo(of(Map.of("distance", Double.POSITIVE_INFINITY)));
+    }
+
+    @Test
+    void typeAndMetricKeysAreNormalized() {
+        Map<String, Object> ordered = new HashMap<>(Map.of("Distance", 5, " heartRate ", 150));
+        Map<String, Object> other = new HashMap<>(Map.of("heartrate", 150, "distance", 5));
+
+        assertThat(fingerprint.of(activity(" running ", 30, 300, ordered)))
+                .isEqualTo(fingerprint.of(activity("RUNNING", 30, 300, other)));
+        assertThat(of(Map.of("note", " Easy Run "))).isEqualTo(of(Map.of("note", "easy run")));
+    }
+
+    @Test
+    void numericSeriesAreReducedToSizeAndMean() {
+        assertThat(of(Map.of("hr", List.of(140, 150, 160)))).isEqualTo(of(Map.of("hr", List.of(160, 140, 150))));
+        assertThat(of(Map.of("hr", List.of(140, 150, 160)))).isNotEqualTo(of(Map.of("hr", List.of(150, 150))));
+        assertThat(of(Map.of("splits", List.of("a", "b")))).isNotEqualTo(of(Map.of("splits", List.of("b", "a"))));
+    }
+
+    @Test
+    void historyBandExtendsTheKey() {
+        Activity activity = activity("RUNNING", 30, 300, null);
+
+        assertThat(fingerprint.of(activity, null)).isEqualTo(fingerprint.of(activity));
+        assertThat(fingerprint.of(activity, "RUNNING|n4|m3|p11|w3")).isNotEqualTo(fingerprint.of(activity))
+                .isEqualTo(fingerprint.of(activity, "RUNNING|n4|m3|p11|w3"))
+                .isNotEqualTo(fingerprint.of(activity, "RUNNING|n5|m3|p11|w3"))
+                .hasSize(64);
+    }
+}
@@ -0,0 +1,135 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.RabbitMqConfig;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ActivityRetryHandlerTest {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final ActivityAIService aiService = mock(ActivityAIService.class);
+    private final RecommendationWriter recommendationWriter = mock(RecommendationWriter.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ActivityRetryHandler retryHandler = new ActivityRetryHandler(rabbitTemplate, aiService,
+            recommendationWriter, meterRegistry, "activity.queue", "fitness.retry", 3);
+
+    private final Activity activity = new Activity();
+
+    ActivityRetryHandlerTest() {
+        activity.setId("a1");
+        activity.setUserId("user-1");
+    }
+
+    private Message sent(String routingKey) {
+        ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(rabbitTemplate).convertAndSend(eq("fitness.retry"), eq(routingKey), eq(activity), postProcessor.capture());
+        return postProcessor.getValue().postProcessMessage(new Message(new byte[0], new MessageProperties()));
+    }
+
+    private double failures(String outcome) {
+        return meterRegistry.get("ai.activity.failures").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void transientFailureGoesToTheNextRetryQueueWithTheAttemptHeader() {
+        retryHandler.handleFailure(activity, 0, new UncheckedIOException(new IOException("bad json"))).block();
+        Message first = sent("activity.queue.retry.1");
+        assertThat((Integer) first.getMessageProperties().getHeader(ActivityRetryHandler.ATTEMPT_HEADER)).isEqualTo(1);
+
+        retryHandler.handleFailure(activity, 2, new GeminiRateLimitException("throttled")).block();
+        Message third = sent("activity.queue.retry.3");
+        assertThat((Integer) third.getMessageProperties().getHeader(ActivityRetryHandler.ATTEMPT_HEADER)).isEqualTo(3);
+
+        assertThat(failures("retried")).isEqualTo(2);
+        verifyNoInteractions(recommendationWriter);
+    }
+
+    @Test
+    void lastAttemptStoresTheDefaultRecommendationInsteadOfRetrying() {
+        Recommendation fallback = Recommendation.builder().activityId("a1").build();
+        when(aiService.createDefaultRecommendation(activity)).thenReturn(fallback);
+        when(recommendationWriter.write(fallback)).thenReturn(Mono.empty());
+
+        retryHandler.handleFailure(activity, 3, new DataAccessResourceFailureException("mongo down")).block();
+
+        verify(recommendationWriter).write(fallback);
+        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), any(Object.class), any(MessagePostProcessor.class));
+        assertThat(failures("exhausted")).isEqualTo(1);
+    }
+
+    @Test
+    void nonTransientFailureIsParkedWithTheException() {
+        retryHandler.handleFailure(activity, 1, new IllegalStateException("no type")).block();
+
+        Message parked = sent("activity.queue.parking-lot");
+        assertThat(parked.getMessageProperties().getHeaders())
+                .containsEntry(ActivityRetryHandler.ATTEMPT_HEADER, 1)
+                .containsEntry("x-exception-type", IllegalStateException.class.getName())
+                .containsEntry("x-exception-message", "no type");
+        assertThat(failures("parked")).isEqualTo(1);
+        verifyNoInteractions(recommendationWriter);
+    }
+
+    @Test
+    void wrappedCausesAreClassifiedByTheirRoot() {
+        assertThat(ActivityRetryHandler.isTransient(new RuntimeException(new GeminiRateLimitException("throttled")))).isTrue();
+        assertThat(ActivityRetryHandler.isTransient(new RuntimeException(new IllegalArgumentException()))).isFalse();
+    }
+
+    @Test
+    void retryQueuesBackOffExponentiallyAndDeadLetterToTheActivityExchange() {
+        RabbitMqConfig config = new RabbitMqConfig();
+        ReflectionTestUtils.setField(config, "queue", "activity.queue");
+        ReflectionTestUtils.setField(config, "exchange", "fitness.exchange");
+        ReflectionTestUtils.setField(config, "routingKey", "activity.tracking");
+
+        Declarables topology = config.activityRetryTopology("fitness.retry", 3, Duration.ofSeconds(5), 4);
+
+        Map<String, Queue> queues = topology.getDeclarablesByType(Queue.class).stream()
+                .collect(Collectors.toMap(Queue::getName, queue -> queue));
+        assertThat(queues).containsOnlyKeys("activity.queue.retry.1", "activity.queue.retry.2",
+                "activity.queue.retry.3", "activity.queue.parking-lot");
+        assertThat(queues.get("activity.queue.retry.1").getArguments()).containsEntry("x-message-ttl", 5_000);
+        assertThat(queues.get("activity.queue.retry.2").getArguments()).containsEntry("x-message-ttl", 20_000);
+        assertThat(queues.get("activity.queue.retry.3").getArguments())
+                .containsEntry("x-message-ttl", 80_000)
+                .containsEntry("x-dead-letter-exchange", "fitness.exchange")
+                .containsEntry("x-dead-letter-routing-key", "activity.tracking");
+        assertThat(queues.get("activity.queue.parking-lot").getArguments()).isEmpty();
+        assertThat(topology.getDeclarablesByType(Binding.class))
+                .allSatisfy(binding -> {
+                    assertThat(binding.getExchange()).isEqualTo("fitness.retry");
+                    assertThat(binding.getRoutingKey()).isEqualTo(binding.getDestination());
+                });
+    }
+}
@@ -0,0 +1,75 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.amqp.AmqpException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchActivityMessageListenerTest {
+
+    private final RecommendationPipeline recommendationPipeline = mock(RecommendationPipeline.class);
+    private final BatchActivityMessageListener listener = new BatchActivityMessageListener(recommendationPipeline);
+
+    private static Activity activity(String id) {
+        Activity activity = new Activity();
+        activity.setId(id);
+        return activity;
+    }
+
+    private static Message<Activity> message(Activity activity, Integer attempt) {
+        MessageBuilder<Activity> builder = MessageBuilder.withPayload(activity);
+        if(attempt != null){
+            builder.setHeader(ActivityRetryHandler.ATTEMPT_HEADER, attempt);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void retryAttemptHeaderIsPassedToThePipeline() {
+        Activity first = activity("a1");
+        Activity retried = activity("a2");
+        when(recommendationPipeline.process(any(Activity.class), anyInt())).thenReturn(Mono.empty());
+
+        listener.processActivities(List.of(message(first, null), message(retried, 2)));
+
+        verify(recommendationPipeline).process(first, 0);
+        verify(recommendationPipeline).process(retried, 2);
+    }
+
+    @Test
+    @Timeout(5)
+    void activitiesOfABatchAreProcessedConcurrently() {
+        // the first activity only completes once the second has been started
+        Activity first = activity("a1");
+        Activity second = activity("a2");
+        Sinks.Empty<Void> secondStarted = Sinks.empty();
+        when(recommendationPipeline.process(first, 0)).thenReturn(secondStarted.asMono());
+        when(recommendationPipeline.process(second, 0)).thenReturn(Mono.fromRunnable(secondStarted::tryEmitEmpty));
+
+        listener.processActivities(List.of(message(first, null), message(second, null)));
+
+        verify(recommendationPipeline).process(second, 0);
+    }
+
+    @Test
+    void failedRetryHandoffFailsTheBatch() {
+        when(recommendationPipeline.process(any(Activity.class), anyInt()))
+                .thenReturn(Mono.error(new AmqpException("broker unavailable")));
+
+        assertThatThrownBy(() -> listener.processActivities(List.of(message(activity("a1"), null))))
+                .isInstanceOf(AmqpException.class);
+    }
+}
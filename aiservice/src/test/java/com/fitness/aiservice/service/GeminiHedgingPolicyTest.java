@@ -0,0 +1,103 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiHedgingPolicyTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * A single fast sample is enough to arm hedging at the 50ms floor; every call adds half a credit.
+     */
+    private GeminiHedgingPolicy armedPolicy() {
+        GeminiHedgingPolicy policy = new GeminiHedgingPolicy(meterRegistry, true, 0.95, Duration.ofMillis(50),
+                10, 1, 0.5, 1);
+        StepVerifier.create(policy.execute(started -> {
+            started.run();
+            return Mono.just("warm-up");
+        })).expectNext("warm-up").verifyComplete();
+        return policy;
+    }
+
+    private double hedges(String result) {
+        return meterRegistry.get("gemini.hedging.hedges").tag("result", result).counter().count();
+    }
+
+    /**
+     * First attempt answers after 300ms, any hedge answers at once.
+     */
+    private static Function<Runnable, Mono<String>> slowThenFast(AtomicInteger attempts) {
+        return started -> {
+            started.run();
+            return attempts.getAndIncrement() == 0
+                    ? Mono.delay(Duration.ofMillis(300)).thenReturn("primary")
+                    : Mono.just("hedge");
+        };
+    }
+
+    @Test
+    void hedgesAreLimitedByTheBudget() {
+        GeminiHedgingPolicy policy = armedPolicy();
+
+        // warm-up and this call add up to one credit, enough for one hedge
+        AtomicInteger attempts = new AtomicInteger();
+        StepVerifier.create(policy.execute(slowThenFast(attempts))).expectNext("hedge").verifyComplete();
+        assertThat(hedges("sent")).isEqualTo(1);
+        assertThat(hedges("won")).isEqualTo(1);
+
+        // the next call only brings half a credit back, so it runs unhedged
+        AtomicInteger unhedged = new AtomicInteger();
+        StepVerifier.create(policy.execute(slowThenFast(unhedged))).expectNext("primary").verifyComplete();
+        assertThat(unhedged).hasValue(1);
+        assertThat(hedges("sent")).isEqualTo(1);
+        assertThat(hedges("denied")).isEqualTo(1);
+    }
+
+    @Test
+    void losingAttemptIsCancelled() {
+        GeminiHedgingPolicy policy = armedPolicy();
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+        Mono<String> call = policy.execute(started -> {
+            started.run();
+            return attempts.getAndIncrement() == 0
+                    ? Mono.<String>never().doOnCancel(() -> primaryCancelled.set(true))
+                    : Mono.delay(Duration.ofMillis(10)).thenReturn("hedge");
+        });
+
+        StepVerifier.create(call).expectNext("hedge").verifyComplete();
+        assertThat(primaryCancelled).isTrue();
+    }
+
+    @Test
+    void timeBeforeTheCallStartsIsNotHedgedOrSampled() {
+        GeminiHedgingPolicy policy = armedPolicy();
+        AtomicInteger attempts = new AtomicInteger();
+
+        // waits 300ms for a permit, well past the 50ms hedge delay, then answers at once
+        Mono<String> queued = policy.execute(started -> {
+            attempts.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(300)).then(Mono.fromCallable(() -> {
+                started.run();
+                return "answer";
+            }));
+        });
+
+        StepVerifier.create(queued).expectNext("answer").verifyComplete();
+        assertThat(attempts).hasValue(1);
+        assertThat(hedges("sent")).isZero();
+        assertThat(meterRegistry.get("gemini.hedging.delay").gauge().value()).isEqualTo(50);
+    }
+}
@@ -0,0 +1,97 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class GeminiRateLimiterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private GeminiRateLimiter limiter(int limit, Duration maxQueueWait) {
+        return new GeminiRateLimiter(meterRegistry, true, 0, 0, Duration.ofSeconds(10), 0, 1000, maxQueueWait,
+                limit, limit, limit, 0.5, Duration.ofSeconds(30), Duration.ofSeconds(1));
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    @Test
+    void queueTimeoutRacingTheGrantNeverLeaksAPermit() {
+        GeminiRateLimiter limiter = limiter(2, Duration.ofMillis(2));
+
+        // calls hold a permit for about as long as the others may queue, so grants keep landing
+        // right around the queue timeouts
+        Mono<Long> calls = Flux.range(0, 20_000)
+                .flatMap(i -> limiter.execute("prompt", () -> Mono.delay(Duration.ofNanos(ThreadLocalRandom.current().nextLong(3_000_000))))
+                        .onErrorResume(GeminiRateLimitException.class, e -> Mono.empty()), 32)
+                .count();
+        StepVerifier.create(calls).expectNextCount(1).expectComplete().verify(Duration.ofSeconds(30));
+
+        // permits are released in doFinally, just after the last result was counted
+        await().atMost(Duration.ofSeconds(1))
+                .untilAsserted(() -> assertThat(gauge("gemini.concurrency.in-flight")).isZero());
+        assertThat(gauge("gemini.rate-limit.queue.size")).isZero();
+    }
+
+    @Test
+    void cancelBetweenGrantAndHandOffReleasesThePermit() throws Exception {
+        // 1000 tokens a second with a 10ms burst: the bucket holds 10 tokens and a 40 character
+        // prompt needs all of them
+        GeminiRateLimiter limiter = new GeminiRateLimiter(meterRegistry, true, 0, 60_000, Duration.ofMillis(10), 0,
+                1000, Duration.ofSeconds(30), 10, 10, 10, 0.5, Duration.ofSeconds(30), Duration.ofSeconds(1));
+        String fullBucket = "x".repeat(40);
+        AtomicReference<Disposable> second = new AtomicReference<>();
+
+        StepVerifier.create(limiter.execute(fullBucket, () -> Mono.just("first"))).expectNext("first").verifyComplete();
+        // both queued calls are granted in the same drain once the bucket refills; the first one
+        // cancels the second before its grant is handed over, like a queue timeout firing there
+        CompletableFuture<String> first = limiter.execute(fullBucket,
+                () -> Mono.fromRunnable(() -> second.get().dispose()).thenReturn("granted")).toFuture();
+        second.set(limiter.execute("", () -> Mono.just("never seen")).subscribe());
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo("granted");
+        await().atMost(Duration.ofSeconds(1))
+                .untilAsserted(() -> assertThat(gauge("gemini.concurrency.in-flight")).isZero());
+    }
+
+    @Test
+    void cancellingAQueuedCallFreesItsPlace() {
+        GeminiRateLimiter limiter = limiter(1, Duration.ofSeconds(30));
+        Disposable holder = limiter.execute("prompt", Mono::never).subscribe();
+        Disposable queued = limiter.execute("prompt", () -> Mono.just("late")).subscribe();
+        assertThat(gauge("gemini.rate-limit.queue.size")).isEqualTo(1);
+
+        queued.dispose();
+        assertThat(gauge("gemini.rate-limit.queue.size")).isZero();
+
+        holder.dispose();
+        assertThat(gauge("gemini.concurrency.in-flight")).isZero();
+    }
+
+    @Test
+    void rejectsCallsThatWaitTooLong() {
+        GeminiRateLimiter limiter = limiter(1, Duration.ofMillis(50));
+        Disposable holder = limiter.execute("prompt", Mono::never).subscribe();
+
+        StepVerifier.create(limiter.execute("prompt", () -> Mono.just("late")))
+                .expectError(GeminiRateLimitException.class)
+                .verify(Duration.ofSeconds(1));
+        holder.dispose();
+        assertThat(gauge("gemini.concurrency.in-flight")).isZero();
+    }
+}
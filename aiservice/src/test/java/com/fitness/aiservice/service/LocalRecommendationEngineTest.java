@@ -0,0 +1,50 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRecommendationEngineTest {
+
+    private final LocalRecommendationEngine engine = new LocalRecommendationEngine(new GeminiResponseParser());
+
+    private static Activity walk(int minutes, Map<String, Object> metrics) {
+        Activity activity = new Activity();
+        activity.setId("a1");
+        activity.setUserId("user-1");
+        activity.setType("WALKING");
+        activity.setDuration(minutes);
+        activity.setCaloriesBurned(minutes * 4);
+        activity.setAdditionalMetrics(metrics);
+        return activity;
+    }
+
+    @Test
+    void walkWithoutDistanceIsAssessedFromItsSteps() {
+        Recommendation brisk = engine.recommend(walk(30, Map.of("steps", 3750)));
+        Recommendation easy = engine.recommend(walk(30, Map.of("stepCount", "2400")));
+
+        assertThat(brisk.getRecommendation()).contains("3750 steps at about 125 steps per minute, a brisk pace.");
+        assertThat(easy.getRecommendation()).contains("2400 steps at about 80 steps per minute, an easy pace.");
+    }
+
+    @Test
+    void distanceWinsOverSteps() {
+        Recommendation recommendation = engine.recommend(walk(30, Map.of("distance", 3.0, "steps", 3750)));
+
+        assertThat(recommendation.getRecommendation()).contains("Average pace of 10.0 min/km, a brisk pace.")
+                .doesNotContain("steps per minute");
+    }
+
+    @Test
+    void walkWithoutDistanceOrStepsHasNoPace() {
+        Recommendation recommendation = engine.recommend(walk(30, Map.of()));
+
+        assertThat(recommendation.getRecommendation()).contains("No distance recorded, so pace could not be assessed.");
+        assertThat(recommendation.getActivityId()).isEqualTo("a1");
+    }
+}
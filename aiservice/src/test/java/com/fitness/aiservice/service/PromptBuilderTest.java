@@ -0,0 +1,102 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PromptBuilderTest {
+
+    private static final int TOKEN_BUDGET = 1000;
+
+    private final UserTrainingStatsService userTrainingStatsService = mock(UserTrainingStatsService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PromptBuilder promptBuilder = new PromptBuilder(userTrainingStatsService, meterRegistry, TOKEN_BUDGET, 16, 12, 200);
+
+    PromptBuilderTest() {
+        when(userTrainingStatsService.summary(any(Activity.class))).thenReturn(Optional.empty());
+    }
+
+    private static Activity activity(String id, Map<String, Object> metrics) {
+        Activity activity = new Activity();
+        activity.setId(id);
+        activity.setUserId("user-1");
+        activity.setType("RUNNING");
+        activity.setDuration(45);
+        activity.setCaloriesBurned(520);
+        activity.setAdditionalMetrics(metrics);
+        return activity;
+    }
+
+    /** A long GPS track plus dozens of scalar metrics, far larger than the budget on its own. */
+    private static Map<String, Object> hugeMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("heartRateSamples", IntStream.range(0, 5_000).mapToObj(i -> 120 + i % 60).toList());
+        metrics.put("track", IntStream.range(0, 2_000)
+                .mapToObj(i -> Map.<String, Object>of("lat", 52.1 + i * 0.0001, "lon", 4.3 + i * 0.0001, "elevation", i % 40))
+                .toList());
+        IntStream.range(0, 200).forEach(i -> metrics.put("metric" + i, "value-" + "x".repeat(150) + i));
+        return metrics;
+    }
+
+    private double truncated() {
+        return meterRegistry.get("ai.prompt.truncated").counter().count();
+    }
+
+    @Test
+    void hugeMetricsAreCutToStayWithinTheTokenBudget() {
+        String prompt = promptBuilder.buildPrompt(activity("a1", hugeMetrics()));
+
+        assertThat(PromptBuilder.estimateTokens(prompt)).isLessThanOrEqualTo(TOKEN_BUDGET);
+        assertThat(prompt).contains("Activity Type: RUNNING", "Duration: 45 minutes", "\"omitted\"")
+                .endsWith("Ensure the response follows the EXACT JSON format shown above.\n");
+        assertThat(truncated()).isEqualTo(1);
+    }
+
+    @Test
+    void longSeriesAreSummarizedAndSmallMetricsKeptIntact() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("distance", 10.456);
+        metrics.put("heartRate", IntStream.range(0, 100).boxed().toList());
+        metrics.put("splits", List.of(300, 305, 298));
+
+        String prompt = promptBuilder.buildPrompt(activity("a1", metrics));
+
+        assertThat(prompt).contains("\"distance\":10.46", "\"splits\":[300,305,298]",
+                "\"heartRate\":{\"n\":100,\"min\":0,\"max\":99,\"avg\":49.5,\"p50\":49,\"p90\":89,\"samples\":[0,");
+        assertThat(truncated()).isZero();
+    }
+
+    @Test
+    void historySummaryIsIncludedAndCountedAgainstTheBudget() {
+        String history = "12 runs in the last 4 weeks, " + "steady aerobic base ".repeat(20);
+        when(userTrainingStatsService.summary(any(Activity.class))).thenReturn(Optional.of(history));
+
+        String prompt = promptBuilder.buildPrompt(activity("a1", hugeMetrics()));
+
+        assertThat(prompt).contains("Training History: " + history);
+        assertThat(PromptBuilder.estimateTokens(prompt)).isLessThanOrEqualTo(TOKEN_BUDGET);
+    }
+
+    @Test
+    void batchPromptSharesTheBudgetBetweenActivities() {
+        List<Activity> activities = IntStream.range(0, 5).mapToObj(i -> activity("a" + i, hugeMetrics())).toList();
+
+        String prompt = promptBuilder.buildBatchPrompt(activities);
+
+        assertThat(PromptBuilder.estimateTokens(prompt)).isLessThanOrEqualTo(TOKEN_BUDGET);
+        assertThat(prompt).contains("Activity Id: a0", "Activity Id: a4", "Additional Metrics: {\"omitted\":202}");
+        assertThat(truncated()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,99 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.loadtest.GeminiPayloads;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.GeminiAnalysis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecommendationBatcherTest {
+
+    private final GeminiService geminiService = mock(GeminiService.class);
+    private final PromptBuilder promptBuilder = mock(PromptBuilder.class);
+
+    RecommendationBatcherTest() {
+        // the "prompt" is just the activity ids, so the stand-in can answer every one of them
+        when(promptBuilder.buildBatchPrompt(anyList())).thenAnswer(invocation -> {
+            List<Activity> activities = invocation.getArgument(0);
+            return activities.stream().map(Activity::getId).collect(Collectors.joining(","));
+        });
+    }
+
+    private RecommendationBatcher batcher(int maxSize, Duration maxWait, int concurrency, Duration submitTimeout) {
+        return new RecommendationBatcher(geminiService, new GeminiResponseParser(), promptBuilder,
+                new RecommendationMetrics(new SimpleMeterRegistry()), true, maxSize, maxWait, concurrency, submitTimeout);
+    }
+
+    private static String batchResponse(String prompt) {
+        List<String> analyses = new ArrayList<>();
+        for(String id : prompt.split(",")){
+            analyses.add(GeminiPayloads.analysis(1, id));
+        }
+        return GeminiPayloads.envelope("[" + String.join(",", analyses) + "]");
+    }
+
+    private static Activity activity(String id) {
+        Activity activity = new Activity();
+        activity.setId(id);
+        activity.setType("RUNNING");
+        return activity;
+    }
+
+    @Test
+    void keepsDispatchingWhenEveryBatchSlotIsBusy() {
+        AtomicInteger calls = new AtomicInteger();
+        when(geminiService.getAnswersAsync(anyString())).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            String prompt = invocation.getArgument(0);
+            return Mono.delay(Duration.ofMillis(150)).thenReturn(batchResponse(prompt));
+        });
+        RecommendationBatcher batcher = batcher(4, Duration.ofMillis(10), 1, Duration.ofSeconds(30));
+
+        // arrivals keep the buffer timer firing while the single dispatch slot is taken
+        Mono<Long> completed = Flux.range(0, 40)
+                .delayElements(Duration.ofMillis(2))
+                .flatMap(i -> batcher.submit(activity("a" + i)).hasElement())
+                .count();
+        StepVerifier.create(completed)
+                .expectNext(40L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+        assertThat(calls.get()).isGreaterThan(1);
+
+        // the pipeline is still alive afterwards
+        Mono<List<GeminiAnalysis>> later = Flux.merge(batcher.submit(activity("b1")), batcher.submit(activity("b2")))
+                .collectList();
+        StepVerifier.create(later)
+                .assertNext(analyses -> assertThat(analyses).extracting(GeminiAnalysis::getActivityId)
+                        .containsExactlyInAnyOrder("b1", "b2"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        batcher.shutdown();
+    }
+
+    @Test
+    void completesEmptyWhenTheBatchDoesNotAnswerInTime() {
+        when(geminiService.getAnswersAsync(anyString())).thenReturn(Mono.never());
+        RecommendationBatcher batcher = batcher(2, Duration.ofMillis(10), 1, Duration.ofMillis(200));
+
+        StepVerifier.create(Flux.merge(batcher.submit(activity("a1")), batcher.submit(activity("a2"))))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        batcher.shutdown();
+    }
+}
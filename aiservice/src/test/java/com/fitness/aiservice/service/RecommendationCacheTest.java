@@ -0,0 +1,120 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.CachedRecommendation;
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecommendationCacheTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    RecommendationCacheTest() {
+        when(reactiveMongoTemplate.findById("fp", CachedRecommendation.class)).thenReturn(Mono.empty());
+        when(reactiveMongoTemplate.save(any(CachedRecommendation.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    }
+
+    private RecommendationCache cache(boolean enabled) {
+        return new RecommendationCache(reactiveMongoTemplate, meterRegistry, enabled, 100, Duration.ofHours(1), Duration.ofDays(7));
+    }
+
+    private double requests(String tier, String result) {
+        return meterRegistry.get("ai.recommendation.cache.requests").tag("tier", tier).tag("result", result).counter().count();
+    }
+
+    private static Recommendation recommendation() {
+        return Recommendation.builder()
+                .activityId("a1")
+                .userId("user-1")
+                .activityType("RUNNING")
+                .recommendation("Solid run")
+                .improvements(List.of("Pace"))
+                .suggestions(List.of("Intervals"))
+                .safety(List.of("Stay hydrated"))
+                .build();
+    }
+
+    @Test
+    void missOnBothTiersThenHitInMemoryAfterPut() {
+        RecommendationCache cache = cache(true);
+
+        StepVerifier.create(cache.get("fp")).verifyComplete();
+        assertThat(requests("memory", "miss")).isEqualTo(1);
+        assertThat(requests("mongo", "miss")).isEqualTo(1);
+
+        cache.put("fp", recommendation());
+        StepVerifier.create(cache.get("fp"))
+                .assertNext(cached -> {
+                    assertThat(cached.getFingerprint()).isEqualTo("fp");
+                    assertThat(cached.getRecommendation()).isEqualTo("Solid run");
+                    assertThat(cached.getExpiresAt()).isAfter(Instant.now().plus(Duration.ofDays(6)));
+                })
+                .verifyComplete();
+        assertThat(requests("memory", "hit")).isEqualTo(1);
+        verify(reactiveMongoTemplate).save(any(CachedRecommendation.class));
+        verify(reactiveMongoTemplate, times(1)).findById("fp", CachedRecommendation.class);
+    }
+
+    @Test
+    void mongoHitIsPromotedToMemory() {
+        CachedRecommendation stored = CachedRecommendation.builder().fingerprint("fp").recommendation("From Mongo")
+                .expiresAt(Instant.now().plusSeconds(60)).build();
+        when(reactiveMongoTemplate.findById("fp", CachedRecommendation.class)).thenReturn(Mono.just(stored));
+        RecommendationCache cache = cache(true);
+
+        StepVerifier.create(cache.get("fp")).expectNext(stored).verifyComplete();
+        StepVerifier.create(cache.get("fp")).expectNext(stored).verifyComplete();
+
+        assertThat(requests("mongo", "hit")).isEqualTo(1);
+        assertThat(requests("memory", "hit")).isEqualTo(1);
+        verify(reactiveMongoTemplate, times(1)).findById("fp", CachedRecommendation.class);
+    }
+
+    @Test
+    void expiredMongoEntryIsAMiss() {
+        CachedRecommendation expired = CachedRecommendation.builder().fingerprint("fp")
+                .expiresAt(Instant.now().minusSeconds(1)).build();
+        when(reactiveMongoTemplate.findById("fp", CachedRecommendation.class)).thenReturn(Mono.just(expired));
+
+        StepVerifier.create(cache(true).get("fp")).verifyComplete();
+
+        assertThat(requests("mongo", "miss")).isEqualTo(1);
+    }
+
+    @Test
+    void mongoFailureIsAMissNotAnError() {
+        when(reactiveMongoTemplate.findById("fp", CachedRecommendation.class))
+                .thenReturn(Mono.error(new DataAccessResourceFailureException("down")));
+
+        StepVerifier.create(cache(true).get("fp")).verifyComplete();
+    }
+
+    @Test
+    void disabledCacheNeitherReadsNorWrites() {
+        RecommendationCache cache = cache(false);
+
+        cache.put("fp", recommendation());
+        StepVerifier.create(cache.get("fp")).verifyComplete();
+
+        verify(reactiveMongoTemplate, never()).findById("fp", CachedRecommendation.class);
+        verify(reactiveMongoTemplate, never()).save(any(CachedRecommendation.class));
+    }
+}
@@ -0,0 +1,111 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.dto.RecommendationPage;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.repository.ReactiveRecommendationRepository;
+import com.fitness.aiservice.repository.RecommendationRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecommendationServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final RecommendationService recommendationService = new RecommendationService(
+            mock(RecommendationRepository.class), mock(ReactiveRecommendationRepository.class), mongoTemplate);
+
+    RecommendationServiceTest() {
+        ReflectionTestUtils.setField(recommendationService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(recommendationService, "maxPageSize", 5);
+    }
+
+    private static String id(int n) {
+        return String.format("%024x", n);
+    }
+
+    private static List<Recommendation> recommendations(int count) {
+        List<Recommendation> recommendations = new ArrayList<>();
+        for(int i = 0; i < count; i++){
+            recommendations.add(Recommendation.builder()
+                    .id(id(i))
+                    .userId("user-1")
+                    .createdAt(LocalDateTime.of(2025, 3, 1, 12, 0).minusMinutes(i))
+                    .build());
+        }
+        return recommendations;
+    }
+
+    @Test
+    void cursorOfAFullPageResumesAfterItsLastItem() {
+        when(mongoTemplate.find(any(Query.class), eq(Recommendation.class))).thenReturn(recommendations(3));
+
+        RecommendationPage first = recommendationService.getUserRecommendationPage("user-1", null, null, null, null, null);
+        assertThat(first.getItems()).extracting(Recommendation::getId).containsExactly(id(0), id(1));
+        assertThat(first.getNextCursor()).isNotNull();
+
+        recommendationService.getUserRecommendationPage("user-1", first.getNextCursor(), null, null, null, null);
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(queries.capture(), eq(Recommendation.class));
+        Query resumed = queries.getAllValues().get(1);
+        List<Document> position = resumed.getQueryObject().getList("$or", Document.class);
+        LocalDateTime lastCreatedAt = LocalDateTime.of(2025, 3, 1, 11, 59);
+        assertThat(position.get(0)).isEqualTo(new Document("createdAt", new Document("$lt", lastCreatedAt)));
+        assertThat(position.get(1)).isEqualTo(new Document("createdAt", lastCreatedAt).append("id", new Document("$lt", id(1))));
+        assertThat(position.get(2)).isEqualTo(new Document("createdAt", null));
+        assertThat(resumed.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        when(mongoTemplate.find(any(Query.class), eq(Recommendation.class))).thenReturn(recommendations(2));
+
+        RecommendationPage page = recommendationService.getUserRecommendationPage("user-1", null, null, null, null, null);
+
+        assertThat(page.getItems()).hasSize(2);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void pageSizeIsClampedToTheMaximum() {
+        when(mongoTemplate.find(any(Query.class), eq(Recommendation.class))).thenReturn(List.of());
+
+        recommendationService.getUserRecommendationPage("user-1", null, 1000, null, null, null);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(Recommendation.class));
+        assertThat(query.getValue().getLimit()).isEqualTo(6);
+    }
+
+    @Test
+    void malformedCursorIsABadRequest() {
+        String noId = Base64.getUrlEncoder().encodeToString("2025-03-01T12:00".getBytes(StandardCharsets.UTF_8));
+        String badDate = Base64.getUrlEncoder().encodeToString(("yesterday," + id(1)).getBytes(StandardCharsets.UTF_8));
+        String tamperedId = Base64.getUrlEncoder().encodeToString("2025-03-01T12:00,r1".getBytes(StandardCharsets.UTF_8));
+
+        for(String cursor : List.of("not base64!", noId, badDate, tamperedId)){
+            assertThatThrownBy(() -> recommendationService.getUserRecommendationPage("user-1", cursor, null, null, null, null))
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecommendationWriterTest {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+    private final ProcessedActivityFilter processedActivityFilter = mock(ProcessedActivityFilter.class);
+    private final RecommendationEventHub recommendationEventHub = mock(RecommendationEventHub.class);
+
+    RecommendationWriterTest() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        when(reactiveMongoTemplate.getConverter()).thenReturn(converter);
+    }
+
+    private RecommendationWriter writer(boolean writeBehind, int maxBatchSize, Duration flushInterval) {
+        return new RecommendationWriter(reactiveMongoTemplate, processedActivityFilter, recommendationEventHub,
+                new RecommendationMetrics(new SimpleMeterRegistry()), writeBehind, maxBatchSize, flushInterval);
+    }
+
+    // the converter stores LocalDateTime as a Date in the default zone
+    private static Date stored(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static Recommendation recommendation(String activityId) {
+        return Recommendation.builder()
+                .activityId(activityId)
+                .userId("user-1")
+                .activityType("RUNNING")
+                .recommendation("Keep going")
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Applies upserts to an in-memory collection keyed by activity id the way Mongo does:
+     * {@code $set} always, {@code $setOnInsert} only when the document is created.
+     */
+    private Map<String, Document> upsertInMemory() {
+        Map<String, Document> collection = new HashMap<>();
+        when(reactiveMongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), eq(Recommendation.class)))
+                .thenAnswer(invocation -> {
+                    Query query = invocation.getArgument(0);
+                    Update update = invocation.getArgument(1);
+                    Document updateObject = update.getUpdateObject();
+                    assertThat(updateObject.keySet()).containsOnly("$set", "$setOnInsert");
+                    String activityId = query.getQueryObject().getString("activityId");
+                    Document existing = collection.get(activityId);
+                    Document stored = existing == null ? new Document("activityId", activityId) : existing;
+                    stored.putAll(updateObject.get("$set", Document.class));
+                    if(existing == null){
+                        stored.putAll(updateObject.get("$setOnInsert", Document.class));
+                        collection.put(activityId, stored);
+                    }
+                    return Mono.just(UpdateResult.acknowledged(existing == null ? 0 : 1, existing == null ? 0L : 1L, null));
+                });
+        return collection;
+    }
+
+    @Test
+    void updateSetsEveryFieldAndOnlyInsertsCreatedAt() {
+        Recommendation recommendation = recommendation("a1");
+        Document update = writer(false, 1, Duration.ofMillis(10)).toUpdate(recommendation).getUpdateObject();
+
+        assertThat(update.keySet()).containsOnly("$set", "$setOnInsert");
+        assertThat(update.get("$set", Document.class))
+                .containsEntry("activityId", "a1")
+                .containsEntry("recommendation", "Keep going")
+                .doesNotContainKeys("_id", "_class", "createdAt");
+        assertThat(update.get("$setOnInsert", Document.class)).containsEntry("createdAt", stored(recommendation.getCreatedAt()));
+    }
+
+    @Test
+    void updateInsertsACreationTimeWhenTheRecommendationHasNone() {
+        Recommendation recommendation = recommendation("a1");
+        recommendation.setCreatedAt(null);
+        Document update = writer(false, 1, Duration.ofMillis(10)).toUpdate(recommendation).getUpdateObject();
+
+        assertThat(update.keySet()).containsOnly("$set", "$setOnInsert");
+        assertThat(update.get("$setOnInsert", Document.class).get("createdAt")).isNotNull();
+    }
+
+    @Test
+    void redeliveryUpdatesTheSameDocumentAndKeepsItsCreationTime() {
+        Map<String, Document> collection = upsertInMemory();
+        RecommendationWriter writer = writer(false, 1, Duration.ofMillis(10));
+        Recommendation first = recommendation("a1");
+        first.setCreatedAt(LocalDateTime.of(2025, 1, 1, 8, 0));
+        Recommendation redelivered = recommendation("a1");
+        redelivered.setRecommendation("Second opinion");
+        redelivered.setCreatedAt(LocalDateTime.of(2025, 1, 2, 8, 0));
+
+        StepVerifier.create(writer.write(first).then(writer.write(redelivered))).verifyComplete();
+
+        assertThat(collection).hasSize(1);
+        assertThat(collection.get("a1"))
+                .containsEntry("recommendation", "Second opinion")
+                .containsEntry("createdAt", stored(LocalDateTime.of(2025, 1, 1, 8, 0)));
+    }
+
+    @Test
+    void keepsFlushingWhenABulkWriteIsSlowerThanTheFlushInterval() {
+        AtomicInteger flushes = new AtomicInteger();
+        ReactiveBulkOperations bulk = mock(ReactiveBulkOperations.class);
+        when(bulk.upsert(any(Query.class), any(UpdateDefinition.class))).thenReturn(bulk);
+        when(bulk.execute()).thenAnswer(invocation -> {
+            flushes.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(100)).thenReturn(mock(BulkWriteResult.class));
+        });
+        when(reactiveMongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(Recommendation.class))).thenReturn(bulk);
+        RecommendationWriter writer = writer(true, 5, Duration.ofMillis(10));
+
+        // writes keep arriving while each 100ms flush is running, so the 10ms timer fires with
+        // nobody ready to take the buffer
+        Mono<Long> written = Flux.range(0, 60)
+                .delayElements(Duration.ofMillis(3))
+                .flatMap(i -> writer.write(recommendation("a" + i)).thenReturn(i))
+                .count();
+        StepVerifier.create(written)
+                .expectNext(60L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+        assertThat(flushes.get()).isGreaterThan(1);
+        writer.shutdown();
+    }
+}